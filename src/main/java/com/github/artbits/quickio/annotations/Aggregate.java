@@ -0,0 +1,12 @@
+package com.github.artbits.quickio.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//The sum, min and max of a numerical field are kept up to date on every write, so they are read without a scan.
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Aggregate {
+}
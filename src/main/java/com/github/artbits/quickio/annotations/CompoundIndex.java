@@ -0,0 +1,17 @@
+package com.github.artbits.quickio.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(CompoundIndexes.class)
+public @interface CompoundIndex {
+    //The indexed fields, in order. Lookups can use all of them, or only the leading ones.
+    String[] fields();
+    //When true, no two documents may share the same combination of values.
+    boolean unique() default true;
+}
@@ -0,0 +1,12 @@
+package com.github.artbits.quickio.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CompoundIndexes {
+    CompoundIndex[] value();
+}
@@ -8,5 +8,8 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Index {
-
+    //When false, several documents may share the same value, and every one of them can be found through the index.
+    boolean unique() default true;
+    //When true, entries are kept in the order of the values, which allows range queries and index-ordered output.
+    boolean ordered() default false;
 }
\ No newline at end of file
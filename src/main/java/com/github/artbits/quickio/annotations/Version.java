@@ -0,0 +1,13 @@
+package com.github.artbits.quickio.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+//An int or long field that counts the writes of a document. It is set on every save, starting at 1,
+//and compare-and-set updates write only when it still holds the expected value.
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Version {
+}
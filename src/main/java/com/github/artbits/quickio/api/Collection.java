@@ -16,22 +16,37 @@
 
 package com.github.artbits.quickio.api;
 
+import com.github.artbits.quickio.core.Filter;
 import com.github.artbits.quickio.core.IOEntity;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public interface Collection<T extends IOEntity> {
     void save(final T t);
     void save(final List<T> list);
-    void update(T t , Predicate<T> predicate);
+    CompletableFuture<Void> saveAsync(T t);
+    CompletableFuture<Void> saveAsync(List<T> list);
+    BulkReport bulkSave(Iterable<T> iterable, Consumer<BulkOptions> consumer);
+    BulkReport bulkSave(Iterable<T> iterable);
+    long update(T t , Predicate<T> predicate);
+    long update(T t, Predicate<T> predicate, Consumer<BatchOptions> consumer);
     void updateWithIndex(T t, Consumer<FindOptions> consumer);
+    boolean saveIfVersion(T t, long version);
+    boolean update(long id, long version, T t);
     void delete(long id);
     void delete(long... ids);
     void delete(List<Long> ids);
-    void delete(Predicate<T> predicate);
+    CompletableFuture<Void> deleteAsync(long id);
+    CompletableFuture<Void> deleteAsync(List<Long> ids);
+    long delete(Predicate<T> predicate);
+    long delete(Predicate<T> predicate, Consumer<BatchOptions> consumer);
     void deleteAll();
     void deleteWithIndex(Consumer<FindOptions> consumer);
     List<T> findAll();
@@ -43,15 +58,31 @@ public interface Collection<T extends IOEntity> {
     List<T> findWithID(Predicate<Long> predicate);
     List<T> findWithTime(Predicate<Long> predicate, Consumer<FindOptions> consumer);
     List<T> findWithTime(Predicate<Long> predicate);
+    List<T> findWithID(long fromId, long toId, Consumer<FindOptions> consumer);
+    List<T> findWithID(long fromId, long toId);
+    List<T> findWithTime(long fromTime, long toTime, Consumer<FindOptions> consumer);
+    List<T> findWithTime(long fromTime, long toTime);
     T findFirst(Predicate<T> predicate);
     T findFirst();
     T findLast(Predicate<T> predicate);
     T findLast();
     T findOne(long id);
     T findOne(Predicate<T> predicate);
+    Cursor<T> cursor(Predicate<T> predicate, Consumer<FindOptions> consumer);
+    Cursor<T> cursor(Predicate<T> predicate);
+    Stream<T> stream(Predicate<T> predicate, Consumer<FindOptions> consumer);
+    Stream<T> stream(Predicate<T> predicate);
+    List<T> findWithFilter(Filter filter, Consumer<FindOptions> consumer);
+    List<T> findWithFilter(Filter filter);
+    Explain explain(Filter filter, Consumer<FindOptions> consumer);
+    Explain explain(Filter filter);
+    <V> List<V> pluck(String fieldName);
     T findWithIndex(Consumer<FindOptions> consumer);
+    List<T> findAllWithIndex(Consumer<FindOptions> consumer);
     boolean exist(Consumer<FindOptions> consumer);
     void dropIndex(String fieldName);
+    IndexTask createIndex(String fieldName);
+    IndexTask rebuildIndex(String fieldName);
     long count(Predicate<T> predicate);
     long count();
     BigDecimal sum(String fieldName, Predicate<T> predicate);
@@ -62,4 +93,13 @@ public interface Collection<T extends IOEntity> {
     BigDecimal max(String fieldName);
     BigDecimal min(String fieldName, Predicate<T> predicate);
     BigDecimal min(String fieldName);
+    Stats stats(String fieldName, Predicate<T> predicate);
+    Stats stats(String fieldName);
+    Map<String, Stats> stats(Predicate<T> predicate, String... fieldNames);
+    Map<String, Stats> exactStats(Predicate<T> predicate, String... fieldNames);
+    <K> Map<K, Group> groupBy(Function<T, K> keyFunction, Predicate<T> predicate, String... fieldNames);
+    <K> Map<K, Group> groupBy(Function<T, K> keyFunction, String... fieldNames);
+    <K> Map<K, Group> groupBy(String keyFieldName, Predicate<T> predicate, String... fieldNames);
+    <K> Map<K, Group> groupBy(String keyFieldName, String... fieldNames);
+    CacheStats cacheStats();
 }
@@ -21,4 +21,11 @@ public interface FindOptions {
     FindOptions skip(long size);
     FindOptions limit(long size);
     void index(String fieldName, Object fieldValue);
+    void index(String[] fieldNames, Object[] fieldValues);
+    FindOptions gt(String fieldName, Object value);
+    FindOptions gte(String fieldName, Object value);
+    FindOptions lt(String fieldName, Object value);
+    FindOptions lte(String fieldName, Object value);
+    FindOptions between(String fieldName, Object fromValue, Object toValue);
+    FindOptions project(String... fieldNames);
 }
@@ -18,9 +18,13 @@ package com.github.artbits.quickio.api;
 
 import com.github.artbits.quickio.core.IOEntity;
 
+import java.util.function.Consumer;
+
 public interface JDB extends AutoCloseable {
     @Override
     void close();
     void destroy();
     <T extends IOEntity> Collection<T> collection(Class<T> clazz);
+    Snapshot snapshot();
+    void transaction(Consumer<Transaction> consumer);
 }
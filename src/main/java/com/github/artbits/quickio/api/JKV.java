@@ -18,6 +18,7 @@ package com.github.artbits.quickio.api;
 
 import com.github.artbits.quickio.core.Config;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
@@ -26,9 +27,11 @@ public interface JKV extends AutoCloseable {
     void close();
     void destroy();
     <K, V> void set(K key, V value);
+    <K, V> CompletableFuture<Void> setAsync(K key, V value);
     <K, V> V get(K key, V defaultValue);
     <K, V> V get(K key, Class<V> clazz);
     <K> boolean del(K key);
+    <K> CompletableFuture<Void> delAsync(K key);
     <K> boolean exists(K key);
     <K> void rename(K oldKey, K newKey);
     <K> String type(K key);
@@ -0,0 +1,25 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.api;
+
+import com.github.artbits.quickio.core.IOEntity;
+
+public interface Transaction {
+    <T extends IOEntity> T findOne(Class<T> clazz, long id);
+    <T extends IOEntity> void save(T t);
+    <T extends IOEntity> void delete(Class<T> clazz, long id);
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.exception.QIOException;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class Aggregator<T extends IOEntity> {
+
+    //The fields are looked up once per class, a scan then only reads their values.
+    private final static Map<Class<?>, Map<String, Accessor>> accessorMap = new ConcurrentHashMap<>();
+
+    private final String[] fieldNames;
+    private final Accessor[] accessors;
+    private final boolean exact;
+
+
+    Aggregator(Class<T> clazz, String[] fieldNames, boolean exact) {
+        Map<String, Accessor> map = accessorMap.computeIfAbsent(clazz, k -> new ConcurrentHashMap<>());
+        this.fieldNames = fieldNames;
+        this.accessors = new Accessor[fieldNames.length];
+        this.exact = exact;
+        for (int i = 0; i < fieldNames.length; i++) {
+            accessors[i] = map.computeIfAbsent(fieldNames[i], name -> new Accessor(ReflectObject.getField(clazz, name)));
+        }
+    }
+
+
+    QStats[] supply() {
+        QStats[] stats = new QStats[accessors.length];
+        for (int i = 0; i < accessors.length; i++) {
+            stats[i] = new QStats(accessors[i].integral, exact);
+        }
+        return stats;
+    }
+
+
+    void accumulate(QStats[] stats, T t) {
+        for (int i = 0; i < accessors.length; i++) {
+            accessors[i].accumulate(stats[i], t);
+        }
+    }
+
+
+    //Hash aggregation, a group holds nothing but its accumulators.
+    <K> void accumulate(Map<K, QGroup> groups, K key, T t) {
+        QGroup group = groups.get(key);
+        if (group == null) {
+            group = new QGroup(fieldNames, supply());
+            groups.put(key, group);
+        }
+        group.add();
+        accumulate(group.stats(), t);
+    }
+
+
+    static <K> Map<K, QGroup> combine(Map<K, QGroup> groups1, Map<K, QGroup> groups2) {
+        groups2.forEach((key, group) -> groups1.merge(key, group, QGroup::merge));
+        return groups1;
+    }
+
+
+    static QStats[] combine(QStats[] stats1, QStats[] stats2) {
+        for (int i = 0; i < stats1.length; i++) {
+            stats1[i].merge(stats2[i]);
+        }
+        return stats1;
+    }
+
+
+    private static final class Accessor {
+
+        private final Field field;
+        private final boolean integral;
+        private final boolean primitive;
+
+
+        Accessor(Field field) {
+            switch (field.getType().getSimpleName().toLowerCase()) {
+                case "int":
+                case "integer":
+                case "byte":
+                case "short":
+                case "long": integral = true; break;
+                case "float":
+                case "double": integral = false; break;
+                default: throw new QIOException(Constants.FIELD_NOT_NUMERICAL_TYPE);
+            }
+            this.field = field;
+            this.primitive = field.getType().isPrimitive();
+        }
+
+
+        //Primitive fields are read without boxing, and null values are left out.
+        void accumulate(QStats stats, Object t) {
+            try {
+                if (primitive) {
+                    if (integral) {
+                        stats.add(field.getLong(t));
+                    } else {
+                        stats.add(field.getDouble(t));
+                    }
+                    return;
+                }
+                Number value = (Number) field.get(t);
+                if (value != null) {
+                    if (integral) {
+                        stats.add(value.longValue());
+                    } else {
+                        stats.add(value.doubleValue());
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new QIOException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class Catalog {
+
+    //Namespace 0 is reserved for the catalog itself.
+    private final static byte[] CATALOG_PREFIX = Codec.encodePrefix(0);
+
+    //Reserved entries start with '#', which can never appear in a class name.
+    private final static String LAYOUT = "#layout";
+    private final static String INDEX_SUFFIX = "#index";
+    private final static String COUNTER_SUFFIX = "#counter";
+    private final static int LAYOUT_VERSION = 1;
+    private final static int MIGRATION_BATCH_SIZE = 10000;
+
+    private final EngineIO engine;
+    private final Map<String, byte[]> map = new ConcurrentHashMap<>();
+    private int maxPrefix = 0;
+
+
+    Catalog(EngineIO engine) {
+        this.engine = engine;
+        engine.iteration(CATALOG_PREFIX, (key, value) -> {
+            String name = new String(key, CATALOG_PREFIX.length, key.length - CATALOG_PREFIX.length, StandardCharsets.UTF_8);
+            map.put(name, value);
+            if (!name.startsWith("#")) {
+                maxPrefix = Math.max(maxPrefix, Codec.decodePrefix(value));
+            }
+        });
+        if (!map.containsKey(LAYOUT)) {
+            migrate();
+            put(LAYOUT, Codec.encodePrefix(LAYOUT_VERSION));
+        }
+    }
+
+
+    byte[] prefix(Class<?> clazz) {
+        return prefix(clazz.getSimpleName());
+    }
+
+
+    //The index entries of a collection live in a namespace of their own, named after its class.
+    byte[] indexPrefix(Class<?> clazz) {
+        return indexPrefix(clazz.getSimpleName());
+    }
+
+
+    byte[] indexPrefix(String name) {
+        return prefix(name + INDEX_SUFFIX);
+    }
+
+
+    //The counter of a collection is the only entry of its namespace.
+    byte[] counterKey(Class<?> clazz) {
+        return prefix(clazz.getSimpleName() + COUNTER_SUFFIX);
+    }
+
+
+    byte[] prefix(String name) {
+        byte[] prefix = map.get(name);
+        if (prefix == null) {
+            synchronized (this) {
+                prefix = map.get(name);
+                if (prefix == null) {
+                    prefix = Codec.encodePrefix(++maxPrefix);
+                    put(name, prefix);
+                }
+            }
+        }
+        return prefix;
+    }
+
+
+    private void put(String name, byte[] value) {
+        engine.put(Codec.concat(CATALOG_PREFIX, name.getBytes(StandardCharsets.UTF_8)), value);
+        map.put(name, value);
+    }
+
+
+    //Databases written before namespaces existed keep every document under its bare 8-byte id.
+    //Move each of them under the namespace of its class, a bounded batch at a time.
+    private void migrate() {
+        List<byte[][]> entries = new ArrayList<>();
+        engine.iteration((key, value) -> {
+            if (key.length != Long.BYTES) {
+                return;
+            }
+            entries.add(new byte[][]{key, value});
+            if (entries.size() >= MIGRATION_BATCH_SIZE) {
+                migrate(entries);
+            }
+        });
+        migrate(entries);
+    }
+
+
+    private void migrate(List<byte[][]> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        engine.writeBatch(batch -> entries.forEach(entry -> {
+            byte[] prefix = prefix(Codec.getClassName(entry[1]));
+            batch.put(Codec.encodeKey(prefix, Codec.decodeKey(entry[0])), entry[1]);
+            batch.delete(entry[0]);
+        }));
+        entries.clear();
+    }
+
+}
@@ -16,18 +16,25 @@
 
 package com.github.artbits.quickio.core;
 
+import com.github.artbits.quickio.exception.QIOException;
 import io.protostuff.LinkedBuffer;
 import io.protostuff.ProtobufIOUtil;
 import io.protostuff.Schema;
 import io.protostuff.runtime.RuntimeSchema;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 final class Codec {
 
     private final static ConcurrentHashMap<Class<?>, byte[]> map = new ConcurrentHashMap<>();
+    private final static ConcurrentHashMap<String, Schema<?>> projectionMap = new ConcurrentHashMap<>();
 
 
     static byte[] encodeKey(long v) {
@@ -35,11 +42,107 @@ final class Codec {
     }
 
 
+    static byte[] encodeKey(byte[] prefix, long v) {
+        return ByteBuffer.allocate(prefix.length + Long.SIZE / Byte.SIZE).put(prefix).putLong(v).array();
+    }
+
+
     static long decodeKey(byte[] bytes) {
-        ByteBuffer buffer = ByteBuffer.allocate(8);
-        buffer.put(bytes, 0, bytes.length);
-        buffer.flip();
-        return buffer.getLong();
+        return ByteBuffer.wrap(bytes, bytes.length - Long.SIZE / Byte.SIZE, Long.SIZE / Byte.SIZE).getLong();
+    }
+
+
+    static byte[] encodePrefix(int v) {
+        return ByteBuffer.allocate(Integer.SIZE / Byte.SIZE).putInt(v).array();
+    }
+
+
+    static int decodePrefix(byte[] bytes) {
+        return ByteBuffer.wrap(bytes, 0, Integer.SIZE / Byte.SIZE).getInt();
+    }
+
+
+    static byte[] nextPrefix(byte[] prefix) {
+        return encodePrefix(decodePrefix(prefix) + 1);
+    }
+
+
+    static byte[] concat(byte[] a1, byte[] a2) {
+        return ByteBuffer.allocate(a1.length + a2.length).put(a1).put(a2).array();
+    }
+
+
+    //Unsigned lexicographical order, the same order in which LevelDB sorts keys.
+    static int compare(byte[] a1, byte[] a2) {
+        for (int i = 0, len = Math.min(a1.length, a2.length); i < len; i++) {
+            int c = (a1[i] & 0xff) - (a2[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a1.length - a2.length;
+    }
+
+
+    //The smallest key that is greater than every key starting with the prefix.
+    static byte[] successor(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xff) {
+                byte[] bytes = Arrays.copyOf(prefix, i + 1);
+                bytes[i]++;
+                return bytes;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+
+
+    //Order-preserving encoding, the unsigned byte order of the result is the natural order of the values.
+    //Numbers are encoded as 8 bytes with the sign flipped, and strings are escaped and terminated,
+    //so that no encoded value is the prefix of another one.
+    static byte[] encodeOrdered(Class<?> type, Object value) {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.SIZE / Byte.SIZE);
+        switch (type.getSimpleName().toLowerCase()) {
+            case "byte":
+            case "short":
+            case "int":
+            case "integer":
+            case "long":
+                return buffer.putLong(((Number) value).longValue() ^ Long.MIN_VALUE).array();
+            case "float":
+            case "double":
+                long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                return buffer.putLong(bits ^ ((bits >> 63) | Long.MIN_VALUE)).array();
+            case "date":
+                return buffer.putLong(((Date) value).getTime() ^ Long.MIN_VALUE).array();
+            case "string":
+                byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+                ByteArrayOutputStream stream = new ByteArrayOutputStream(bytes.length + 2);
+                for (byte b : bytes) {
+                    stream.write(b);
+                    if (b == 0) {
+                        stream.write(0xff);
+                    }
+                }
+                stream.write(0);
+                stream.write(1);
+                return stream.toByteArray();
+            default:
+                throw new QIOException(Constants.FIELD_DOES_NOT_SUPPORT_ORDERED_INDEX);
+        }
+    }
+
+
+    static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
@@ -59,30 +162,52 @@ final class Codec {
 
 
     static <T> T decode(byte[] bytes, Class<T> clazz) {
+        return decode(bytes, clazz, null);
+    }
+
+
+    //The payload is read in place. With field names, only those fields are decoded,
+    //the others are skipped over in the stream without being materialized.
+    static <T> T decode(byte[] bytes, Class<T> clazz, String[] fieldNames) {
         byte[] classNameBytes = getClassNameBytes(clazz);
         if (bytes == null || bytes.length <= classNameBytes.length) {
             return null;
         }
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        byte[] bytes1 = new byte[classNameBytes.length];
-        byte[] bytes2 = new byte[]{0};
-        buffer.get(bytes1, 0, bytes1.length);
-        buffer.get(bytes2, 0, bytes2.length);
-        if (bytes2[0] != 0) {
+        if (bytes[classNameBytes.length] != 0) {
             return null;
         }
-        if (!arraysEquals(bytes1, classNameBytes)) {
-            return null;
+        for (int i = 0; i < classNameBytes.length; i++) {
+            if (bytes[i] != classNameBytes[i]) {
+                return null;
+            }
         }
-        byte[] bytes3 = new byte[bytes.length - bytes1.length - bytes2.length];
-        buffer.get(bytes3, 0, bytes3.length);
-        Schema<T> tSchema = RuntimeSchema.getSchema(clazz);
+        int offset = classNameBytes.length + 1;
+        Schema<T> tSchema = (fieldNames == null) ? RuntimeSchema.getSchema(clazz) : getSchema(clazz, fieldNames);
         T t = tSchema.newMessage();
-        ProtobufIOUtil.mergeFrom(bytes3, t, tSchema);
+        ProtobufIOUtil.mergeFrom(bytes, offset, bytes.length - offset, t, tSchema);
         return t;
     }
 
 
+    //A projection keeps the field numbers of the full schema, so the fields it leaves out are unknown to it.
+    @SuppressWarnings("unchecked")
+    private static <T> Schema<T> getSchema(Class<T> clazz, String[] fieldNames) {
+        String key = clazz.getName() + ":" + String.join(",", fieldNames);
+        return (Schema<T>) projectionMap.computeIfAbsent(key, k -> {
+            RuntimeSchema<T> schema = (RuntimeSchema<T>) RuntimeSchema.getSchema(clazz);
+            List<io.protostuff.runtime.Field<T>> fields = new ArrayList<>();
+            for (String fieldName : fieldNames) {
+                io.protostuff.runtime.Field<T> field = schema.getFieldByName(fieldName);
+                if (field == null) {
+                    throw new QIOException(Constants.FIELD_DOES_NOT_EXIST);
+                }
+                fields.add(field);
+            }
+            return new RuntimeSchema<>(clazz, fields, schema.instantiator);
+        });
+    }
+
+
     static <T> T clone(T t, Class<T> clazz) {
         Schema<T> schema = RuntimeSchema.getSchema(clazz);
         byte[] bytes = ProtobufIOUtil.toByteArray(t, schema, LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
@@ -114,24 +239,4 @@ final class Codec {
         return bytes;
     }
 
-
-    private static boolean arraysEquals(byte[] a1, byte[] a2) {
-        if (a1 == a2) {
-            return true;
-        }
-        if (a1 == null || a2 == null) {
-            return false;
-        }
-        int length = a1.length;
-        if (a2.length != length) {
-            return false;
-        }
-        for (int i = 0, size = length / 2; i <= size; i++) {
-            if (a1[i] != a2[i] || a1[length - 1 - i] != a2[length - 1 - i]) {
-                return false;
-            }
-        }
-        return true;
-    }
-
 }
\ No newline at end of file
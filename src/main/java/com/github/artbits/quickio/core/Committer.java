@@ -0,0 +1,269 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.exception.QIOException;
+import org.iq80.leveldb.api.DBException;
+import org.iq80.leveldb.api.WriteBatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+//Asynchronous writes of an engine are written by a single thread. The requests that queue up while a group is written
+//form the next group, up to the batch size, which is written with one batch. A delay lets the writer wait for more.
+final class Committer implements AutoCloseable {
+
+    //The state that the writes of a group change, such as the running values of a collection. It is locked from
+    //the first write of the group until the group is written, and a failed write puts back its mark.
+    interface Party {
+        void lock();
+        void unlock();
+        Object mark();
+        void reset(Object mark);
+        void prepare(WriteBatch batch);
+        void commit();
+        void abort();
+    }
+
+
+    private static class Request {
+        final List<Party> parties;
+        final Consumer<WriteBatch> consumer;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Request(List<Party> parties, Consumer<WriteBatch> consumer) {
+            this.parties = parties;
+            this.consumer = consumer;
+        }
+    }
+
+
+    //Keeps the entries of one request apart, so that a request that fails leaves nothing in the batch of its group.
+    //They are pending as soon as they are recorded, and taken back from the pending entries if the request fails.
+    private static class RecordBatch implements WriteBatch {
+        final NavigableMap<byte[], byte[]> pending;
+        final List<byte[][]> entries = new ArrayList<>();
+        final Deque<Runnable> undo = new ArrayDeque<>();
+
+        RecordBatch(NavigableMap<byte[], byte[]> pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public WriteBatch put(byte[] key, byte[] value) {
+            record(key, value);
+            return this;
+        }
+
+        @Override
+        public WriteBatch delete(byte[] key) {
+            record(key, null);
+            return this;
+        }
+
+        @Override
+        public void close() { }
+
+        void record(byte[] key, byte[] value) {
+            entries.add(new byte[][]{key, value});
+            boolean existed = pending.containsKey(key);
+            byte[] previous = pending.put(key, value);
+            undo.push(() -> {
+                if (existed) {
+                    pending.put(key, previous);
+                } else {
+                    pending.remove(key);
+                }
+            });
+        }
+
+        void replay(WriteBatch batch) {
+            for (byte[][] entry : entries) {
+                if (entry[1] != null) {
+                    batch.put(entry[0], entry[1]);
+                } else {
+                    batch.delete(entry[0]);
+                }
+            }
+        }
+
+        void rollback() {
+            undo.forEach(Runnable::run);
+        }
+    }
+
+
+    private final static Request STOP = new Request(Collections.emptyList(), null);
+
+    private final EngineIO engine;
+    private final int batchSize;
+    private final long delay;
+    private final boolean sync;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private Thread thread;
+    private boolean closed;
+
+
+    Committer(EngineIO engine, Config config) {
+        this.engine = engine;
+        this.batchSize = config.asyncBatchSize;
+        this.delay = TimeUnit.MILLISECONDS.toNanos(config.asyncDelay);
+        this.sync = config.durability != Config.Durability.ASYNC;
+    }
+
+
+    CompletableFuture<Void> submit(Party party, Consumer<WriteBatch> consumer) {
+        return submit(Collections.singletonList(party), consumer);
+    }
+
+
+    //A request of several parties, such as a transaction over several collections, is written whole or not at all.
+    CompletableFuture<Void> submit(List<Party> parties, Consumer<WriteBatch> consumer) {
+        Request request = new Request(parties, consumer);
+        synchronized (this) {
+            if (closed) {
+                request.future.completeExceptionally(new QIOException(Constants.WRITER_CLOSED));
+                return request.future;
+            }
+            if (thread == null) {
+                thread = new Thread(this::run, "quickio-writer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            queue.add(request);
+        }
+        return request.future;
+    }
+
+
+    //Writes what has been submitted before it returns.
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            thread = this.thread;
+            queue.add(STOP);
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private void run() {
+        List<Request> group = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                group.add(queue.take());
+                queue.drainTo(group, batchSize - group.size());
+                long deadline = System.nanoTime() + delay;
+                while (group.size() < batchSize && !group.contains(STOP)) {
+                    Request request = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (request == null) {
+                        break;
+                    }
+                    group.add(request);
+                    queue.drainTo(group, batchSize - group.size());
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            running &= !group.remove(STOP);
+            write(group);
+            group.clear();
+        }
+    }
+
+
+    //Each request reads its own entries and those of the requests before it in the group, as if they were written already.
+    //The futures complete once the locks are let go, on this thread, so their actions must not wait for a later write.
+    private void write(List<Request> group) {
+        Set<Party> parties = new LinkedHashSet<>();
+        group.forEach(request -> parties.addAll(request.parties));
+        List<Party> locked = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        RuntimeException exception = null;
+        try {
+            for (Party party : parties) {
+                party.lock();
+                locked.add(party);
+            }
+            NavigableMap<byte[], byte[]> pending = new TreeMap<>(Codec::compare);
+            engine.pending(pending);
+            try {
+                engine.writeBatch(batch -> {
+                    for (Request request : group) {
+                        RecordBatch record = new RecordBatch(pending);
+                        List<Object> marks = new ArrayList<>();
+                        request.parties.forEach(party -> marks.add(party.mark()));
+                        try {
+                            request.consumer.accept(record);
+                        } catch (RuntimeException e) {
+                            record.rollback();
+                            for (int i = 0; i < marks.size(); i++) {
+                                request.parties.get(i).reset(marks.get(i));
+                            }
+                            failures.add(e);
+                            continue;
+                        }
+                        failures.add(null);
+                        record.replay(batch);
+                    }
+                    parties.forEach(party -> party.prepare(batch));
+                }, sync);
+            } finally {
+                engine.pending(null);
+            }
+            parties.forEach(Party::commit);
+        } catch (RuntimeException e) {
+            exception = (e instanceof DBException) ? new QIOException(e) : e;
+            locked.forEach(Party::abort);
+        } finally {
+            locked.forEach(Party::unlock);
+        }
+        for (int i = 0; i < group.size(); i++) {
+            Throwable failure = (exception != null) ? exception : failures.get(i);
+            if (failure != null) {
+                group.get(i).future.completeExceptionally(failure);
+            } else {
+                group.get(i).future.complete(null);
+            }
+        }
+    }
+
+}
@@ -16,13 +16,37 @@
 
 package com.github.artbits.quickio.core;
 
+import com.github.artbits.quickio.exception.QIOException;
+
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 public final class Config {
 
+    //When a write reaches the disk. SYNC flushes every write before it returns. ASYNC leaves writes to the operating
+    //system, so a crash of the machine may lose the last ones. GROUP syncs each group of asynchronous writes once,
+    //before their futures complete, and leaves other writes to the operating system until then.
+    public enum Durability {
+        SYNC, ASYNC, GROUP
+    }
+
+
     String name;
     String path;
     Long cacheSize;
+    int parallelism = 1;
+    Executor executor;
+    int asyncBatchSize = 1000;
+    long asyncDelay;
+    Integer writeBufferSize;
+    Integer blockSize;
+    Integer blockRestartInterval;
+    Integer maxOpenFiles;
+    boolean compression = true;
+    boolean verifyChecksums;
+    Durability durability = Durability.ASYNC;
+    int entityCacheSize;
+    long entityCacheBytes;
 
 
     private Config() { }
@@ -46,10 +70,111 @@ public final class Config {
     }
 
 
+    //A larger buffer takes more writes before it is flushed to a table, which suits stores that are mostly written.
+    public Config writeBufferSize(int size) {
+        this.writeBufferSize = checkPositive(size);
+        return this;
+    }
+
+
+    //Smaller blocks read less for each lookup, larger ones compress and scan better.
+    public Config blockSize(int size) {
+        this.blockSize = checkPositive(size);
+        return this;
+    }
+
+
+    public Config blockRestartInterval(int interval) {
+        this.blockRestartInterval = checkPositive(interval);
+        return this;
+    }
+
+
+    public Config maxOpenFiles(int count) {
+        this.maxOpenFiles = checkPositive(count);
+        return this;
+    }
+
+
+    public Config compression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+
+    //Checks the data read against its checksums, on every read and when the database is opened.
+    public Config verifyChecksums(boolean verifyChecksums) {
+        this.verifyChecksums = verifyChecksums;
+        return this;
+    }
+
+
+    public Config durability(Durability durability) {
+        this.durability = (durability != null) ? durability : Durability.ASYNC;
+        return this;
+    }
+
+
+    //Every collection keeps up to this many documents read by id, the least recently read going first.
+    //The cache is off unless a size or a byte limit is set.
+    public Config entityCacheSize(int size) {
+        this.entityCacheSize = Math.max(size, 0);
+        return this;
+    }
+
+
+    //Bounds the same cache by the stored size of its documents.
+    public Config entityCacheBytes(long bytes) {
+        this.entityCacheBytes = Math.max(bytes, 0);
+        return this;
+    }
+
+
+    //Full scans are split into id ranges scanned on the executor, the common ForkJoinPool by default.
+    //Predicates then run on several threads at once. A parallelism of 1 keeps scans on the calling thread.
+    public Config parallelism(int parallelism) {
+        this.parallelism = Math.max(parallelism, 1);
+        return this;
+    }
+
+
+    public Config executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+
+    //Asynchronous writes are grouped, at most this many requests to a batch.
+    public Config asyncBatchSize(int size) {
+        if (size <= 0) {
+            throw new QIOException(Constants.BATCH_SIZE_ILLEGAL);
+        }
+        this.asyncBatchSize = size;
+        return this;
+    }
+
+
+    //How long the writer waits for more requests once the first one of a group arrives. With none it writes
+    //what has queued up while the previous group was written.
+    public Config asyncDelay(long millis) {
+        this.asyncDelay = Math.max(millis, 0);
+        return this;
+    }
+
+
     public static Config of(Consumer<Config> consumer) {
         Config config = new Config();
         consumer.accept(config);
         return config;
     }
 
+
+
+    private static int checkPositive(int value) {
+        if (value <= 0) {
+            throw new QIOException(Constants.VALUE_NOT_POSITIVE);
+        }
+        return value;
+    }
+
 }
\ No newline at end of file
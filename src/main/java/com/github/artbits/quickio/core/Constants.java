@@ -32,4 +32,21 @@ final class Constants {
     final static String SORTING_PARAMETER_VALUE_ILLEGAL = "The sorting parameter value can only be 1 or -1";
     final static String KEY_ALREADY_EXISTS_AND_NOT_AVAILABLE = "The new key already exists and is not available";
     final static String FIELD_NOT_NUMERICAL_TYPE = "This field is not of numerical type";
+    final static String NON_ORDERED_INDEXED_FIELD = "This field does not have an ordered index";
+    final static String FIELD_DOES_NOT_SUPPORT_ORDERED_INDEX = "This field does not support ordered index";
+    final static String RANGE_FIELD_NAME_ILLEGAL = "The range method field name cannot be null or empty";
+    final static String INDEX_VALUES_DO_NOT_MATCH_FIELDS = "The number of index values must match the number of index fields";
+    final static String PROJECTION_FIELD_NAMES_ILLEGAL = "Projection field names cannot be empty";
+    final static String FILTER_FIELD_NAME_ILLEGAL = "Filter field name cannot be empty";
+    final static String FILTER_VALUE_NOT_COMPARABLE = "Filter value cannot be compared with the field value";
+    final static String FILTERS_EMPTY = "At least one filter is required";
+    final static String RANGE_ON_MULTIPLE_FIELDS = "Range conditions can only be applied to one field";
+    final static String BATCH_SIZE_ILLEGAL = "The batch size must be greater than 0";
+    final static String VALUE_NOT_POSITIVE = "The value must be greater than 0";
+    final static String SNAPSHOT_READ_ONLY = "A snapshot is read-only";
+    final static String VERSION_FIELD_NOT_INTEGRAL = "The version field must be of type int or long";
+    final static String NO_VERSION_FIELD = "This class has no @Version field";
+    final static String TRANSACTION_CONFLICT = "The transaction kept conflicting with other writes and was given up";
+    final static String WRITER_CLOSED = "The database is closed and cannot accept writes";
+    final static String INDEX_BUILD_CANCELLED = "The index build was cancelled because the database was closed";
 }
\ No newline at end of file
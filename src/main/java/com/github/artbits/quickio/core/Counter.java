@@ -0,0 +1,408 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.annotations.Aggregate;
+import com.github.artbits.quickio.api.Stats;
+import com.github.artbits.quickio.exception.QIOException;
+import org.iq80.leveldb.api.WriteBatch;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+//The document count of a collection and the running values of its @Aggregate fields, stored next to the documents
+//and written in the same batch as them.
+final class Counter<T extends IOEntity> implements Committer.Party {
+
+    private static class CounterObject {
+        long count;
+        Map<String, FieldObject> fieldMap = new HashMap<>();
+
+
+        CounterObject copy() {
+            CounterObject object = new CounterObject();
+            object.count = count;
+            fieldMap.forEach((name, fieldObject) -> object.fieldMap.put(name, fieldObject.copy()));
+            return object;
+        }
+    }
+
+
+    //Sums are exact. Removing the document that holds the min or the max leaves both unknown until they are read.
+    private static class FieldObject implements Stats {
+        long count;
+        BigDecimal sum = BigDecimal.ZERO;
+        BigDecimal min;
+        BigDecimal max;
+        boolean stale;
+
+
+        FieldObject copy() {
+            FieldObject fieldObject = new FieldObject();
+            fieldObject.count = count;
+            fieldObject.sum = sum;
+            fieldObject.min = min;
+            fieldObject.max = max;
+            fieldObject.stale = stale;
+            return fieldObject;
+        }
+
+
+        void add(BigDecimal value) {
+            count++;
+            sum = sum.add(value);
+            if (!stale) {
+                min = (min == null || value.compareTo(min) < 0) ? value : min;
+                max = (max == null || value.compareTo(max) > 0) ? value : max;
+            }
+        }
+
+
+        void remove(BigDecimal value) {
+            count--;
+            sum = sum.subtract(value);
+            if (count == 0) {
+                sum = BigDecimal.ZERO;
+                min = null;
+                max = null;
+                stale = false;
+            } else if (value.compareTo(min) == 0 || value.compareTo(max) == 0) {
+                stale = true;
+            }
+        }
+
+
+        @Override
+        public long count() {
+            return count;
+        }
+
+
+        @Override
+        public BigDecimal sum() {
+            return sum;
+        }
+
+
+        @Override
+        public Double average() {
+            return (count == 0) ? null : sum.doubleValue() / count;
+        }
+
+
+        @Override
+        public BigDecimal min() {
+            return min;
+        }
+
+
+        @Override
+        public BigDecimal max() {
+            return max;
+        }
+    }
+
+
+    private final EngineIO engine;
+    private final Indexer indexer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final byte[] key;
+    private final Class<T> clazz;
+    private final byte[] prefix;
+    private final String[] fieldNames;
+    private final Field[] fields;
+    private CounterObject object;
+    private volatile CounterObject published;
+    private CounterObject prepared;
+
+
+    Counter(EngineIO engine, Indexer indexer, byte[] key, Class<T> clazz, byte[] prefix) {
+        this.engine = engine;
+        this.indexer = indexer;
+        this.key = key;
+        this.clazz = clazz;
+        this.prefix = prefix;
+        List<Field> list = new ArrayList<>();
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Aggregate.class)) {
+                    checkType(field);
+                    field.setAccessible(true);
+                    list.add(field);
+                }
+            }
+        }
+        this.fields = list.toArray(new Field[0]);
+        this.fieldNames = list.stream().map(Field::getName).toArray(String[]::new);
+        load();
+        if (!engine.readOnly()) {
+            recount();
+        } else if (object != null) {
+            object.fieldMap.keySet().retainAll(Arrays.asList(fieldNames));
+            published = object.copy();
+        }
+    }
+
+
+    //Writers of a collection take turns, so that the running values reach the engine in the order they are computed.
+    //Readers are handed a copy of the values once they are written, the copy is never changed afterwards.
+    void writeBatch(Consumer<WriteBatch> consumer) {
+        lock.lock();
+        try {
+            indexer.writeBatch(batch -> {
+                consumer.accept(batch);
+                batch.put(key, Codec.encode(object));
+            });
+            published = object.copy();
+        } catch (RuntimeException e) {
+            load();
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    //Runs the deletion of every document while writers wait, and then counts the collection again,
+    //which is instant once it is empty and correct if the deletion stopped part way.
+    void clear(Runnable runnable) {
+        lock.lock();
+        try {
+            runnable.run();
+        } finally {
+            if (!engine.readOnly()) {
+                object = null;
+                recount();
+            }
+            lock.unlock();
+        }
+    }
+
+
+    //A group of asynchronous writes holds the same locks as a single writer, until the whole group is written.
+    @Override
+    public void lock() {
+        lock.lock();
+        indexer.sharedLock().lock();
+    }
+
+
+    @Override
+    public void unlock() {
+        indexer.sharedLock().unlock();
+        lock.unlock();
+    }
+
+
+    @Override
+    public Object mark() {
+        return object.copy();
+    }
+
+
+    @Override
+    public void reset(Object mark) {
+        object = (CounterObject) mark;
+    }
+
+
+    @Override
+    public void prepare(WriteBatch batch) {
+        prepared = object.copy();
+        batch.put(key, Codec.encode(object));
+    }
+
+
+    @Override
+    public void commit() {
+        published = prepared;
+    }
+
+
+    @Override
+    public void abort() {
+        load();
+    }
+
+
+    void add(T t) {
+        object.count++;
+        for (int i = 0; i < fields.length; i++) {
+            BigDecimal value = getValue(fields[i], t);
+            if (value != null) {
+                object.fieldMap.get(fieldNames[i]).add(value);
+            }
+        }
+    }
+
+
+    //Takes the stored bytes of a document that is replaced or deleted, null when there is none.
+    void remove(byte[] value) {
+        if (value == null) {
+            return;
+        }
+        object.count--;
+        if (fields.length == 0) {
+            return;
+        }
+        T t = Codec.decode(value, clazz, fieldNames);
+        for (int i = 0; i < fields.length; i++) {
+            BigDecimal value1 = getValue(fields[i], t);
+            if (value1 != null) {
+                object.fieldMap.get(fieldNames[i]).remove(value1);
+            }
+        }
+    }
+
+
+    //A counter over a snapshot is only read, and holds nothing when the snapshot was taken before it was first stored.
+    boolean counted() {
+        return published != null;
+    }
+
+
+    long count() {
+        return published.count;
+    }
+
+
+    boolean contains(String fieldName) {
+        return published != null && published.fieldMap.containsKey(fieldName);
+    }
+
+
+    //Unknown min and max values are recounted while writers go on. Every write publishes new values, so the recount
+    //is kept only if the values it started from are still the published ones, and is returned either way.
+    Stats stats(String fieldName, Supplier<Stats> supplier) {
+        CounterObject counted = published;
+        FieldObject fieldObject = counted.fieldMap.get(fieldName);
+        if (!fieldObject.stale) {
+            return fieldObject;
+        }
+        Stats stats = supplier.get();
+        lock.lock();
+        try {
+            fieldObject = object.fieldMap.get(fieldName);
+            if (published == counted && fieldObject.stale) {
+                fieldObject.min = stats.min();
+                fieldObject.max = stats.max();
+                fieldObject.stale = false;
+                store();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+
+    private void load() {
+        byte[] bytes = engine.get(key);
+        object = (bytes != null) ? Codec.decode(bytes, CounterObject.class) : null;
+        if (object != null && object.fieldMap == null) {
+            object.fieldMap = new HashMap<>();
+        }
+        published = (object != null) ? object.copy() : null;
+    }
+
+
+    //A collection written before it was counted, or a field that was annotated since, is counted from its documents once.
+    private void recount() {
+        boolean counted = object != null;
+        if (!counted) {
+            object = new CounterObject();
+        }
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < fields.length; i++) {
+            if (!object.fieldMap.containsKey(fieldNames[i])) {
+                object.fieldMap.put(fieldNames[i], new FieldObject());
+                indexes.add(i);
+            }
+        }
+        boolean changed = object.fieldMap.keySet().retainAll(Arrays.asList(fieldNames));
+        if (counted && indexes.isEmpty()) {
+            if (changed) {
+                store();
+            }
+            return;
+        }
+        String[] names = indexes.stream().map(i -> fieldNames[i]).toArray(String[]::new);
+        engine.iteration(prefix, (key1, value) -> {
+            if (!counted) {
+                object.count++;
+            }
+            if (names.length > 0) {
+                T t = Codec.decode(value, clazz, names);
+                for (int i : indexes) {
+                    BigDecimal value1 = getValue(fields[i], t);
+                    if (value1 != null) {
+                        object.fieldMap.get(fieldNames[i]).add(value1);
+                    }
+                }
+            }
+        });
+        store();
+    }
+
+
+    //A counter over a snapshot keeps the min and max it recounts to itself.
+    private void store() {
+        if (!engine.readOnly()) {
+            engine.put(key, Codec.encode(object));
+        }
+        published = object.copy();
+    }
+
+
+    private static BigDecimal getValue(Field field, Object t) {
+        try {
+            Object value = field.get(t);
+            if (value == null) {
+                return null;
+            }
+            return (value instanceof Double || value instanceof Float)
+                    ? BigDecimal.valueOf(((Number) value).doubleValue())
+                    : BigDecimal.valueOf(((Number) value).longValue());
+        } catch (IllegalAccessException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    private static void checkType(Field field) {
+        switch (field.getType().getSimpleName().toLowerCase()) {
+            case "int":
+            case "integer":
+            case "byte":
+            case "short":
+            case "long":
+            case "float":
+            case "double": return;
+            default: throw new QIOException(Constants.FIELD_NOT_NUMERICAL_TYPE);
+        }
+    }
+
+}
@@ -16,8 +16,11 @@
 
 package com.github.artbits.quickio.core;
 
+import org.iq80.leveldb.api.DBIterator;
+import org.iq80.leveldb.api.Snapshot;
 import org.iq80.leveldb.api.WriteBatch;
 
+import java.util.NavigableMap;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -27,10 +30,24 @@ interface EngineIO extends AutoCloseable {
     @Override
     void close();
     void destroy();
+    EngineIO view();
+    boolean readOnly();
     void put(byte[] key, byte[] value);
     void delete(byte[] key);
     byte[] get(byte[] key);
     void writeBatch(Consumer<WriteBatch> consumer);
+    void writeBatch(Consumer<WriteBatch> consumer, boolean sync);
+    void deleteRange(byte[] start, byte[] end);
+    void pending(NavigableMap<byte[], byte[]> map);
+    DBIterator iterator();
+    Snapshot snapshot();
+    DBIterator iterator(Snapshot snapshot);
     void iteration(BiConsumer<byte[], byte[]> consumer);
     <T> T iteration(BiFunction<byte[], byte[], T> function);
+    void iteration(byte[] prefix, BiConsumer<byte[], byte[]> consumer);
+    <T> T iteration(byte[] prefix, BiFunction<byte[], byte[], T> function);
+    void iteration(byte[] start, byte[] end, BiConsumer<byte[], byte[]> consumer);
+    <T> T iteration(byte[] start, byte[] end, BiFunction<byte[], byte[], T> function);
+    void reverseIteration(byte[] start, byte[] end, BiConsumer<byte[], byte[]> consumer);
+    <T> T reverseIteration(byte[] start, byte[] end, BiFunction<byte[], byte[], T> function);
 }
\ No newline at end of file
@@ -22,19 +22,41 @@ import org.iq80.leveldb.impl.Iq80DBFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 final class EngineLevel implements EngineIO {
 
+    private final static int DELETE_BATCH_SIZE = 10000;
+    private final static int REVERSE_WINDOW_SIZE = 1024;
+    private final static int BISECT_READ_SIZE = 16;
+
     private File file;
     private DBFactory factory;
     private DB db;
+    private WriteOptions writeOptions;
+    private ReadOptions readOptions;
+    private Snapshot snapshot;
+
+    //The entries of a group of writes that are not written yet, seen by the thread that writes the group
+    //when it reads. A null value is a deletion.
+    private final ThreadLocal<NavigableMap<byte[], byte[]>> pending = new ThreadLocal<>();
 
 
     @Override
@@ -50,7 +72,17 @@ final class EngineLevel implements EngineIO {
         try {
             file = Paths.get(config.path, config.name).toFile();
             factory = new Iq80DBFactory();
-            db = factory.open(file, new Options().createIfMissing(true).cacheSize(config.cacheSize));
+            Options options = new Options().createIfMissing(true).cacheSize(config.cacheSize)
+                    .compressionType(config.compression ? CompressionType.SNAPPY : CompressionType.NONE)
+                    .verifyChecksums(config.verifyChecksums)
+                    .paranoidChecks(config.verifyChecksums);
+            Optional.ofNullable(config.writeBufferSize).ifPresent(options::writeBufferSize);
+            Optional.ofNullable(config.blockSize).ifPresent(options::blockSize);
+            Optional.ofNullable(config.blockRestartInterval).ifPresent(options::blockRestartInterval);
+            Optional.ofNullable(config.maxOpenFiles).ifPresent(options::maxOpenFiles);
+            db = factory.open(file, options);
+            writeOptions = new WriteOptions().sync(config.durability == Config.Durability.SYNC);
+            readOptions = new ReadOptions().verifyChecksums(config.verifyChecksums);
         } catch (IOException e) {
             throw new QIOException(e);
         }
@@ -61,6 +93,11 @@ final class EngineLevel implements EngineIO {
     @Override
     public void close() {
         try {
+            if (snapshot != null) {
+                snapshot.close();
+                snapshot = null;
+                db = null;
+            }
             if (db != null) {
                 db.close();
                 db = null;
@@ -73,10 +110,14 @@ final class EngineLevel implements EngineIO {
 
     @Override
     public void destroy() {
+        checkWritable();
         try {
             factory.destroy(file, null);
             close();
             Path filePath = Paths.get(file.getPath());
+            if (!Files.exists(filePath)) {
+                return;
+            }
             Comparator<Path> comparator = Comparator.reverseOrder();
             Files.walk(filePath).sorted(comparator).forEach(path -> {
                 try {
@@ -91,38 +132,131 @@ final class EngineLevel implements EngineIO {
     }
 
 
+    //Shares the store and reads it as it is now, until the view is closed. Writes to a view are refused.
+    @Override
+    public EngineIO view() {
+        EngineLevel view = new EngineLevel();
+        view.file = file;
+        view.factory = factory;
+        view.db = db;
+        view.writeOptions = writeOptions;
+        view.snapshot = db.getSnapshot();
+        view.readOptions = new ReadOptions().verifyChecksums(readOptions.verifyChecksums()).snapshot(view.snapshot);
+        return view;
+    }
+
+
+    @Override
+    public boolean readOnly() {
+        return snapshot != null;
+    }
+
+
     @Override
     public void put(byte[] key, byte[] value) {
-        db.put(key, value);
+        checkWritable();
+        db.put(key, value, writeOptions);
     }
 
 
     @Override
     public void delete(byte[] key) {
-        db.delete(key);
+        checkWritable();
+        db.delete(key, writeOptions);
     }
 
 
     @Override
     public byte[] get(byte[] key) {
-        return db.get(key);
+        NavigableMap<byte[], byte[]> map = pending.get();
+        if (map != null && map.containsKey(key)) {
+            return map.get(key);
+        }
+        return db.get(key, readOptions);
     }
 
 
     @Override
     public void writeBatch(Consumer<WriteBatch> consumer) {
+        writeBatch(consumer, writeOptions.sync());
+    }
+
+
+    @Override
+    public void writeBatch(Consumer<WriteBatch> consumer, boolean sync) {
+        checkWritable();
         try (WriteBatch batch = db.createWriteBatch()) {
             consumer.accept(batch);
-            db.write(batch);
+            db.write(batch, sync ? new WriteOptions().sync(true) : writeOptions);
         } catch (IOException e) {
             throw new QIOException(e);
         }
     }
 
 
+    //Only the keys are collected, a bounded batch at a time. The range is compacted afterwards,
+    //so that the space it took is given back instead of waiting for compactions to reach it.
+    @Override
+    public void deleteRange(byte[] start, byte[] end) {
+        List<byte[]> keys = new ArrayList<>();
+        iteration(start, end, (key, value) -> {
+            keys.add(key);
+            if (keys.size() >= DELETE_BATCH_SIZE) {
+                writeBatch(batch -> keys.forEach(batch::delete));
+                keys.clear();
+            }
+        });
+        writeBatch(batch -> keys.forEach(batch::delete));
+        try {
+            db.compactRange(start, end);
+        } catch (UnsupportedOperationException ignored) {
+            //Engines without manual compaction leave the range to their background compactions.
+        }
+    }
+
+
+    @Override
+    public void pending(NavigableMap<byte[], byte[]> map) {
+        if (map != null) {
+            pending.set(map);
+        } else {
+            pending.remove();
+        }
+    }
+
+
+    @Override
+    public DBIterator iterator() {
+        return db.iterator(readOptions);
+    }
+
+
+    @Override
+    public Snapshot snapshot() {
+        return (snapshot != null) ? () -> { } : db.getSnapshot();
+    }
+
+
+    @Override
+    public DBIterator iterator(Snapshot snapshot) {
+        if (this.snapshot != null) {
+            return db.iterator(readOptions);
+        }
+        return db.iterator(new ReadOptions().verifyChecksums(readOptions.verifyChecksums()).snapshot(snapshot));
+    }
+
+
     @Override
     public void iteration(BiConsumer<byte[], byte[]> consumer) {
-        try (DBIterator iterator = db.iterator()) {
+        NavigableMap<byte[], byte[]> map = pending.get();
+        if (map != null) {
+            pendingIteration(map, new byte[0], key -> true, (key, value) -> {
+                consumer.accept(key, value);
+                return null;
+            });
+            return;
+        }
+        try (DBIterator iterator = db.iterator(readOptions)) {
             for(iterator.seekToFirst(); iterator.hasNext(); iterator.next()) {
                 byte[] key = iterator.peekNext().getKey();
                 byte[] value = iterator.peekNext().getValue();
@@ -136,7 +270,11 @@ final class EngineLevel implements EngineIO {
 
     @Override
     public <T> T iteration(BiFunction<byte[], byte[], T> function) {
-        try (DBIterator iterator = db.iterator()) {
+        NavigableMap<byte[], byte[]> map = pending.get();
+        if (map != null) {
+            return pendingIteration(map, new byte[0], key -> true, function);
+        }
+        try (DBIterator iterator = db.iterator(readOptions)) {
             for(iterator.seekToFirst(); iterator.hasNext(); iterator.next()) {
                 byte[] key = iterator.peekNext().getKey();
                 byte[] value = iterator.peekNext().getValue();
@@ -151,4 +289,260 @@ final class EngineLevel implements EngineIO {
         }
     }
 
+
+    @Override
+    public void iteration(byte[] prefix, BiConsumer<byte[], byte[]> consumer) {
+        NavigableMap<byte[], byte[]> map = pending.get();
+        if (map != null) {
+            pendingIteration(map, prefix, key -> Codec.startsWith(key, prefix), (key, value) -> {
+                consumer.accept(key, value);
+                return null;
+            });
+            return;
+        }
+        try (DBIterator iterator = db.iterator(readOptions)) {
+            for(iterator.seek(prefix); iterator.hasNext(); iterator.next()) {
+                byte[] key = iterator.peekNext().getKey();
+                if (!Codec.startsWith(key, prefix)) {
+                    break;
+                }
+                byte[] value = iterator.peekNext().getValue();
+                consumer.accept(key, value);
+            }
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    @Override
+    public <T> T iteration(byte[] prefix, BiFunction<byte[], byte[], T> function) {
+        NavigableMap<byte[], byte[]> map = pending.get();
+        if (map != null) {
+            return pendingIteration(map, prefix, key -> Codec.startsWith(key, prefix), function);
+        }
+        try (DBIterator iterator = db.iterator(readOptions)) {
+            for(iterator.seek(prefix); iterator.hasNext(); iterator.next()) {
+                byte[] key = iterator.peekNext().getKey();
+                if (!Codec.startsWith(key, prefix)) {
+                    break;
+                }
+                byte[] value = iterator.peekNext().getValue();
+                T t = function.apply(key, value);
+                if (t != null) {
+                    return t;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    @Override
+    public void iteration(byte[] start, byte[] end, BiConsumer<byte[], byte[]> consumer) {
+        NavigableMap<byte[], byte[]> map = pending.get();
+        if (map != null) {
+            pendingIteration(map, start, key -> Codec.compare(key, end) < 0, (key, value) -> {
+                consumer.accept(key, value);
+                return null;
+            });
+            return;
+        }
+        try (DBIterator iterator = db.iterator(readOptions)) {
+            for(iterator.seek(start); iterator.hasNext(); iterator.next()) {
+                byte[] key = iterator.peekNext().getKey();
+                if (Codec.compare(key, end) >= 0) {
+                    break;
+                }
+                byte[] value = iterator.peekNext().getValue();
+                consumer.accept(key, value);
+            }
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    @Override
+    public <T> T iteration(byte[] start, byte[] end, BiFunction<byte[], byte[], T> function) {
+        NavigableMap<byte[], byte[]> map = pending.get();
+        if (map != null) {
+            return pendingIteration(map, start, key -> Codec.compare(key, end) < 0, function);
+        }
+        try (DBIterator iterator = db.iterator(readOptions)) {
+            for(iterator.seek(start); iterator.hasNext(); iterator.next()) {
+                byte[] key = iterator.peekNext().getKey();
+                if (Codec.compare(key, end) >= 0) {
+                    break;
+                }
+                byte[] value = iterator.peekNext().getValue();
+                T t = function.apply(key, value);
+                if (t != null) {
+                    return t;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    @Override
+    public void reverseIteration(byte[] start, byte[] end, BiConsumer<byte[], byte[]> consumer) {
+        reverseIteration(start, end, (key, value) -> {
+            consumer.accept(key, value);
+            return null;
+        });
+    }
+
+
+    //Stepping backwards makes this engine seek from the first key again, so the walk only goes forwards: the keys
+    //are read as numbers, bisection finds the last key, and the keys below it are walked forwards in windows that
+    //are handed out backwards. A window widens while it holds few keys, a window holding too many is given up and
+    //the last key is bisected for again. Keys longer than the numbers are read wider when they share the first bytes.
+    @Override
+    public <T> T reverseIteration(byte[] start, byte[] end, BiFunction<byte[], byte[], T> function) {
+        byte[] first = iteration(start, end, (key, value) -> key);
+        if (first == null) {
+            return null;
+        }
+        int width = Math.max(first.length, end.length);
+        byte[] floor = first;
+        BigInteger gap = null;
+        byte[] upper = end;
+        Deque<byte[][]> window = new ArrayDeque<>();
+        while (true) {
+            BigInteger bottom = toNumber(first, width);
+            BigInteger top = toNumber(upper, width);
+            boolean last = (gap == null);
+            BigInteger low = last ? lastNumber(toNumber(floor, width), top, upper, width) : top.subtract(gap);
+            byte[] lower = (low.compareTo(bottom) > 0) ? toBytes(low, width) : start;
+            boolean[] full = {false};
+            window.clear();
+            iteration(lower, upper, (key, value) -> {
+                if (window.size() == REVERSE_WINDOW_SIZE) {
+                    full[0] = true;
+                    return true;
+                }
+                window.addLast(new byte[][]{key, value});
+                return null;
+            });
+            if (full[0]) {
+                //The keys of the window that holds the last key all share the first bytes, and are longer.
+                if (last) {
+                    for (byte[][] entry : window) {
+                        width = Math.max(width, entry[0].length);
+                    }
+                }
+                floor = (lower == start) ? first : lower;
+                gap = null;
+                continue;
+            }
+            int size = window.size();
+            while (!window.isEmpty()) {
+                byte[][] entry = window.pollLast();
+                T t = function.apply(entry[0], entry[1]);
+                if (t != null) {
+                    return t;
+                }
+            }
+            if (lower == start) {
+                return null;
+            }
+            floor = first;
+            upper = lower;
+            gap = last ? BigInteger.ONE : (size < REVERSE_WINDOW_SIZE / 2) ? gap.shiftLeft(1) : gap;
+        }
+    }
+
+
+    //The number of the last key below the upper bound, knowing that there is a key from the low number on. The
+    //bisection stops once the keys from the middle on are few enough to be read.
+    private BigInteger lastNumber(BigInteger low, BigInteger high, byte[] upper, int width) {
+        List<byte[]> keys = new ArrayList<>();
+        while (high.subtract(low).compareTo(BigInteger.ONE) > 0) {
+            BigInteger mid = low.add(high).shiftRight(1);
+            keys.clear();
+            iteration(toBytes(mid, width), upper, (key, value) -> {
+                keys.add(key);
+                return (keys.size() > BISECT_READ_SIZE) ? true : null;
+            });
+            if (keys.isEmpty()) {
+                high = mid;
+            } else if (keys.size() <= BISECT_READ_SIZE) {
+                return toNumber(keys.get(keys.size() - 1), width);
+            } else {
+                low = toNumber(keys.get(0), width);
+            }
+        }
+        return low;
+    }
+
+
+    //The first bytes of the key as an unsigned number, a shorter key is filled up with zeros.
+    private static BigInteger toNumber(byte[] key, int width) {
+        return new BigInteger(1, Arrays.copyOf(key, width));
+    }
+
+
+    private static byte[] toBytes(BigInteger number, int width) {
+        byte[] bytes = number.toByteArray();
+        byte[] key = new byte[width];
+        int length = Math.min(bytes.length, width);
+        System.arraycopy(bytes, bytes.length - length, key, width - length, length);
+        return key;
+    }
+
+
+    //Merges the stored entries with the pending ones, which take the place of stored entries with the same key.
+    private <T> T pendingIteration(NavigableMap<byte[], byte[]> map, byte[] start, Predicate<byte[]> predicate,
+                                   BiFunction<byte[], byte[], T> function) {
+        Iterator<Map.Entry<byte[], byte[]>> entries = map.tailMap(start, true).entrySet().iterator();
+        Map.Entry<byte[], byte[]> entry = entries.hasNext() ? entries.next() : null;
+        try (DBIterator iterator = db.iterator(readOptions)) {
+            iterator.seek(start);
+            while (true) {
+                byte[] key1 = iterator.hasNext() ? iterator.peekNext().getKey() : null;
+                key1 = (key1 != null && predicate.test(key1)) ? key1 : null;
+                byte[] key2 = (entry != null && predicate.test(entry.getKey())) ? entry.getKey() : null;
+                if (key1 == null && key2 == null) {
+                    return null;
+                }
+                int i = (key1 == null) ? 1 : (key2 == null) ? -1 : Codec.compare(key1, key2);
+                byte[] key, value;
+                if (i < 0) {
+                    key = key1;
+                    value = iterator.peekNext().getValue();
+                    iterator.next();
+                } else {
+                    key = key2;
+                    value = entry.getValue();
+                    entry = entries.hasNext() ? entries.next() : null;
+                    if (i == 0) {
+                        iterator.next();
+                    }
+                }
+                if (value != null) {
+                    T t = function.apply(key, value);
+                    if (t != null) {
+                        return t;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+
+    private void checkWritable() {
+        if (snapshot != null) {
+            throw new QIOException(Constants.SNAPSHOT_READ_ONLY);
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.CacheStats;
+import com.github.artbits.quickio.exception.QIOException;
+import io.protostuff.runtime.RuntimeSchema;
+import org.iq80.leveldb.api.WriteBatch;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+//Documents of a collection by id, as read by id. The least recently read go first once there are more of them
+//than the size, or their stored bytes add up to more than the bytes. A write takes its documents out after it
+//is written, and a read that started before it does not put back what it read.
+//Documents whose fields are all immutable are kept decoded and handed out as shallow copies. Others are kept
+//as their stored bytes and decoded on every read, which still saves the lookup in the engine.
+final class EntityCache<T extends IOEntity> {
+
+    private final static int ENTRY_OVERHEAD = 64;
+    private final static List<Class<?>> IMMUTABLE_TYPES = Arrays.asList(String.class, Boolean.class, Character.class,
+            Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, BigDecimal.class,
+            BigInteger.class, UUID.class);
+
+    private static class Entry<T> {
+        final byte[] value;
+        final T t;
+
+        Entry(byte[] value, T t) {
+            this.value = value;
+            this.t = t;
+        }
+    }
+
+
+    private final Class<T> clazz;
+    private final byte[] prefix;
+    private final int maxSize;
+    private final long maxBytes;
+    private final Field[] fields;
+    private final LinkedHashMap<Long, Entry<T>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long evictions;
+    private long bytes;
+    private long generation;
+
+
+    EntityCache(Class<T> clazz, byte[] prefix, int maxSize, long maxBytes) {
+        this.clazz = clazz;
+        this.prefix = prefix;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        this.fields = copyableFields(clazz);
+    }
+
+
+    boolean enabled() {
+        return maxSize > 0 || maxBytes > 0;
+    }
+
+
+    T get(long id, EngineIO engine) {
+        Entry<T> entry;
+        long generation1;
+        synchronized (this) {
+            entry = map.get(id);
+            generation1 = generation;
+        }
+        if (entry != null) {
+            hits.increment();
+            return copy(entry);
+        }
+        misses.increment();
+        byte[] value = engine.get(Codec.encodeKey(prefix, id));
+        T t = (value != null) ? Codec.decode(value, clazz) : null;
+        if (t == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (generation1 == generation && !map.containsKey(id)) {
+                put(id, new Entry<>(value, (fields != null) ? t : null));
+            }
+        }
+        return (fields != null) ? copy(t) : t;
+    }
+
+
+    //Wraps the batch of a write, so that the ids of the documents it writes are known once it is written.
+    Consumer<WriteBatch> track(Consumer<WriteBatch> consumer, Set<Long> ids) {
+        if (!enabled()) {
+            return consumer;
+        }
+        return batch -> consumer.accept(new WriteBatch() {
+            @Override
+            public WriteBatch put(byte[] key, byte[] value) {
+                add(key);
+                return batch.put(key, value);
+            }
+
+            @Override
+            public WriteBatch delete(byte[] key) {
+                add(key);
+                return batch.delete(key);
+            }
+
+            @Override
+            public void close() throws IOException {
+                batch.close();
+            }
+
+            void add(byte[] key) {
+                if (key.length == prefix.length + Long.BYTES && Codec.startsWith(key, prefix)) {
+                    ids.add(Codec.decodeKey(key));
+                }
+            }
+        });
+    }
+
+
+    synchronized void invalidate(Collection<Long> ids) {
+        if (!enabled()) {
+            return;
+        }
+        generation++;
+        ids.forEach(id -> {
+            Entry<T> entry = map.remove(id);
+            if (entry != null) {
+                bytes -= weight(entry);
+            }
+        });
+    }
+
+
+    synchronized void clear() {
+        generation++;
+        map.clear();
+        bytes = 0;
+    }
+
+
+    synchronized CacheStats stats() {
+        return new QCacheStats(hits.sum(), misses.sum(), evictions, map.size(), bytes);
+    }
+
+
+    private void put(long id, Entry<T> entry) {
+        map.put(id, entry);
+        bytes += weight(entry);
+        Iterator<Map.Entry<Long, Entry<T>>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext() && ((maxSize > 0 && map.size() > maxSize) || (maxBytes > 0 && bytes > maxBytes))) {
+            bytes -= weight(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+
+    private T copy(Entry<T> entry) {
+        return (entry.t != null) ? copy(entry.t) : Codec.decode(entry.value, clazz);
+    }
+
+
+    private T copy(T t) {
+        T copy = RuntimeSchema.getSchema(clazz).newMessage();
+        try {
+            for (Field field : fields) {
+                field.set(copy, field.get(t));
+            }
+        } catch (IllegalAccessException e) {
+            throw new QIOException(e);
+        }
+        return copy;
+    }
+
+
+    private static long weight(Entry<?> entry) {
+        return entry.value.length + ENTRY_OVERHEAD;
+    }
+
+
+    //The fields to copy, or null when some field could be changed in place and the copy would share it.
+    private static Field[] copyableFields(Class<?> clazz) {
+        List<Field> list = new ArrayList<>();
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                Class<?> type = field.getType();
+                if (!type.isPrimitive() && !type.isEnum() && !IMMUTABLE_TYPES.contains(type)
+                        && !(TemporalAccessor.class.isAssignableFrom(type) && type.getName().startsWith("java.time."))) {
+                    return null;
+                }
+                field.setAccessible(true);
+                list.add(field);
+            }
+        }
+        return list.toArray(new Field[0]);
+    }
+
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.exception.QIOException;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public final class Filter {
+
+    enum Operator {EQ, IN, GT, GTE, LT, LTE, EXISTS, AND, OR}
+
+    final Operator operator;
+    final String fieldName;
+    final Object[] values;
+    final Filter[] filters;
+    private volatile Field field;
+
+
+    private Filter(Operator operator, String fieldName, Object[] values, Filter[] filters) {
+        this.operator = operator;
+        this.fieldName = fieldName;
+        this.values = values;
+        this.filters = filters;
+    }
+
+
+    public static Filter eq(String fieldName, Object value) {
+        return condition(Operator.EQ, fieldName, value);
+    }
+
+
+    public static Filter in(String fieldName, Object... values) {
+        checkFieldName(fieldName);
+        Optional.ofNullable(values).orElseThrow(NullPointerException::new);
+        Arrays.stream(values).forEach(value -> Optional.ofNullable(value).orElseThrow(NullPointerException::new));
+        return new Filter(Operator.IN, fieldName, values, null);
+    }
+
+
+    public static Filter gt(String fieldName, Object value) {
+        return condition(Operator.GT, fieldName, value);
+    }
+
+
+    public static Filter gte(String fieldName, Object value) {
+        return condition(Operator.GTE, fieldName, value);
+    }
+
+
+    public static Filter lt(String fieldName, Object value) {
+        return condition(Operator.LT, fieldName, value);
+    }
+
+
+    public static Filter lte(String fieldName, Object value) {
+        return condition(Operator.LTE, fieldName, value);
+    }
+
+
+    public static Filter between(String fieldName, Object fromValue, Object toValue) {
+        return and(gte(fieldName, fromValue), lte(fieldName, toValue));
+    }
+
+
+    public static Filter exists(String fieldName) {
+        checkFieldName(fieldName);
+        return new Filter(Operator.EXISTS, fieldName, new Object[0], null);
+    }
+
+
+    public static Filter and(Filter... filters) {
+        return group(Operator.AND, filters);
+    }
+
+
+    public static Filter or(Filter... filters) {
+        return group(Operator.OR, filters);
+    }
+
+
+    boolean test(IOEntity t) {
+        switch (operator) {
+            case AND:
+                return Arrays.stream(filters).allMatch(filter -> filter.test(t));
+            case OR:
+                return Arrays.stream(filters).anyMatch(filter -> filter.test(t));
+        }
+        Object value = getValue(t);
+        if (value == null) {
+            return false;
+        }
+        switch (operator) {
+            case EQ: return equals(value, values[0]);
+            case IN: return Arrays.stream(values).anyMatch(v -> equals(value, v));
+            case GT: return compare(value, values[0]) > 0;
+            case GTE: return compare(value, values[0]) >= 0;
+            case LT: return compare(value, values[0]) < 0;
+            case LTE: return compare(value, values[0]) <= 0;
+            default: return true;
+        }
+    }
+
+
+    void collectFieldNames(Set<String> fieldNames) {
+        if (filters != null) {
+            Arrays.stream(filters).forEach(filter -> filter.collectFieldNames(fieldNames));
+        } else {
+            fieldNames.add(fieldName);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        switch (operator) {
+            case AND:
+            case OR:
+                String joining = " " + operator.name().toLowerCase() + " ";
+                return Arrays.stream(filters).map(Filter::toString).collect(Collectors.joining(joining, "(", ")"));
+            case EQ: return fieldName + " = " + values[0];
+            case IN: return fieldName + " in " + Arrays.toString(values);
+            case GT: return fieldName + " > " + values[0];
+            case GTE: return fieldName + " >= " + values[0];
+            case LT: return fieldName + " < " + values[0];
+            case LTE: return fieldName + " <= " + values[0];
+            default: return fieldName + " exists";
+        }
+    }
+
+
+    //Integral numbers are compared exactly, other numbers as doubles, so an Integer value matches a Double field.
+    static int compare(Object value1, Object value2) {
+        if (value1 instanceof Number && value2 instanceof Number) {
+            if (isIntegral(value1) && isIntegral(value2)) {
+                return Long.compare(((Number) value1).longValue(), ((Number) value2).longValue());
+            }
+            return Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+        }
+        if (value1 instanceof Comparable && value1.getClass() == value2.getClass()) {
+            @SuppressWarnings("unchecked")
+            Comparable<Object> comparable = (Comparable<Object>) value1;
+            return comparable.compareTo(value2);
+        }
+        throw new QIOException(Constants.FILTER_VALUE_NOT_COMPARABLE);
+    }
+
+
+    private static boolean equals(Object value1, Object value2) {
+        if (value1 instanceof Number && value2 instanceof Number) {
+            return compare(value1, value2) == 0;
+        }
+        return Objects.equals(value1, value2);
+    }
+
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+
+    private Object getValue(IOEntity t) {
+        Field f = field;
+        if (f == null || !f.getDeclaringClass().isAssignableFrom(t.getClass())) {
+            f = ReflectObject.getField(t.getClass(), fieldName);
+            field = f;
+        }
+        try {
+            return f.get(t);
+        } catch (IllegalAccessException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    private static Filter condition(Operator operator, String fieldName, Object value) {
+        checkFieldName(fieldName);
+        Optional.ofNullable(value).orElseThrow(NullPointerException::new);
+        return new Filter(operator, fieldName, new Object[]{value}, null);
+    }
+
+
+    private static Filter group(Operator operator, Filter... filters) {
+        if (filters == null || filters.length == 0) {
+            throw new QIOException(Constants.FILTERS_EMPTY);
+        }
+        Arrays.stream(filters).forEach(filter -> Optional.ofNullable(filter).orElseThrow(NullPointerException::new));
+        return new Filter(operator, null, null, filters);
+    }
+
+
+    private static void checkFieldName(String fieldName) {
+        if (fieldName == null || fieldName.isEmpty()) {
+            throw new QIOException(Constants.FILTER_FIELD_NAME_ILLEGAL);
+        }
+    }
+
+}
@@ -16,30 +16,47 @@
 
 package com.github.artbits.quickio.core;
 
+import com.github.artbits.quickio.annotations.CompoundIndex;
+import com.github.artbits.quickio.annotations.CompoundIndexes;
 import com.github.artbits.quickio.annotations.Index;
 import com.github.artbits.quickio.exception.QIOException;
+import org.iq80.leveldb.api.DBIterator;
 import org.iq80.leveldb.api.WriteBatch;
 
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
-
-import static com.github.artbits.quickio.core.Constants.INDEX;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 final class Indexer {
 
+    private final static int MIGRATION_BATCH_SIZE = 10000;
+    private final static int DROP_BATCH_SIZE = 10000;
+
     private final EngineIO engine;
+    private final byte[] prefix;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
 
     private static class IndexObject {
         String className;
         String filedName;
         Object value;
+        boolean unique;
+        byte[] orderedKey;
 
-        IndexObject(String className, String filedName, Object value) {
+        IndexObject(String className, String filedName, Object value, boolean unique) {
             this.className = className;
             this.filedName = filedName;
             this.value = value;
+            this.unique = unique;
         }
 
         @Override
@@ -49,37 +66,114 @@ final class Indexer {
     }
 
 
+    //A unique key of a batch of new documents, taken when an entry starts with it and has the given length,
+    //or any length when it is 0.
+    private static class Probe {
+        IndexObject indexObject;
+        int length;
+
+        Probe(IndexObject indexObject, int length) {
+            this.indexObject = indexObject;
+            this.length = length;
+        }
+    }
+
+
     private static class IndexMapObject {
         Map<String, String> indexMap = new HashMap<>();
+        Map<String, String> postingMap = new HashMap<>();
+        Map<String, byte[]> orderedMap = new HashMap<>();
+    }
+
+
+    //The index entries of a collection share the engine of its documents, under a namespace of their own,
+    //so a document and its index entries are always written in the same batch.
+    Indexer(EngineIO engine, byte[] prefix) {
+        this.engine = engine;
+        this.prefix = prefix;
+    }
+
+
+    //Databases written before the index entries shared the engine keep them in a LevelDB of their own.
+    //Only the maps of the documents are read, every other entry is derived from them under the new keys.
+    static void migrate(EngineIO engine, Catalog catalog, EngineIO legacy) {
+        Map<String, Indexer> indexers = new HashMap<>();
+        List<byte[][]> entries = new ArrayList<>();
+        legacy.iteration((key, value) -> {
+            if (key.length != Long.BYTES) {
+                return;
+            }
+            entries.add(new byte[][]{key, value});
+            if (entries.size() >= MIGRATION_BATCH_SIZE) {
+                migrate(engine, catalog, indexers, entries);
+            }
+        });
+        migrate(engine, catalog, indexers, entries);
+    }
+
+
+    private static void migrate(EngineIO engine, Catalog catalog, Map<String, Indexer> indexers, List<byte[][]> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        engine.writeBatch(batch -> entries.forEach(entry -> {
+            long id = Codec.decodeKey(entry[0]);
+            IndexMapObject value2 = decodeIndexMap(entry[1]);
+            String className = getClassName(value2);
+            if (className != null) {
+                Indexer indexer = indexers.computeIfAbsent(className, name -> new Indexer(engine, catalog.indexPrefix(name)));
+                indexer.migrate(batch, id, value2);
+            }
+        }));
+        entries.clear();
+    }
+
+
+    private void migrate(WriteBatch batch, long id, IndexMapObject value2) {
+        value2.indexMap.values().forEach(key1 -> batch.put(encodeUniqueKey(key1), Codec.encodeKey(id)));
+        value2.postingMap.values().forEach(key1 -> batch.put(encodePostingKey(key1, id), new byte[0]));
+        value2.orderedMap.replaceAll((fieldName, key1) -> Codec.concat(prefix, key1));
+        value2.orderedMap.values().forEach(key1 -> batch.put(Codec.encodeKey(key1, id), new byte[0]));
+        batch.put(encodeMapKey(id), Codec.encode(value2));
     }
 
 
-    Indexer(EngineIO engine, String path, String name) {
-        this.engine = engine.open(Config.of(c -> c.name(INDEX)
-                .path(path + "/" + name)
-                .cache(1024 * 1024L)));
+    //Writers of documents share the lock, while an index build holds it alone for one batch at a time,
+    //so the maps of the documents are never read and written by both at once.
+    void writeBatch(Consumer<WriteBatch> consumer) {
+        lock.readLock().lock();
+        try {
+            engine.writeBatch(consumer);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
 
-    void close() {
-        engine.close();
+    Lock sharedLock() {
+        return lock.readLock();
     }
 
 
-    void destroy() {
-        engine.destroy();
+    void exclusiveWriteBatch(Consumer<WriteBatch> consumer) {
+        lock.writeLock().lock();
+        try {
+            engine.writeBatch(consumer);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
 
-    private <T extends IOEntity> void setIndex(WriteBatch batch, T t) {
-        List<IndexObject> indexObjects = extractIndexObjects(t);
+    <T extends IOEntity> void setIndex(WriteBatch batch, T t) {
+        List<IndexObject> indexObjects = extractIndexObjects(t, null, true);
         if (indexObjects.size() == 0) return;
         long value1 = t.objectId();
         long key2 = t.objectId();
-        byte[] valueBytes2 = engine.get(Codec.encodeKey(key2));
+        byte[] valueBytes2 = engine.get(encodeMapKey(key2));
         AtomicReference<IndexMapObject> atomicReference = new AtomicReference<>();
         if (valueBytes2 != null) {
-            IndexMapObject indexMapObject = Codec.decode(valueBytes2, IndexMapObject.class);
+            IndexMapObject indexMapObject = decodeIndexMap(valueBytes2);
             atomicReference.set(indexMapObject);
         }
         if (atomicReference.get() == null) {
@@ -87,38 +181,57 @@ final class Indexer {
         }
         IndexMapObject value2 = atomicReference.get();
         indexObjects.forEach(indexObject -> {
+            if (indexObject.orderedKey != null) {
+                byte[] oldKey1 = value2.orderedMap.getOrDefault(indexObject.filedName, null);
+                if (!Arrays.equals(indexObject.orderedKey, oldKey1)) {
+                    value2.orderedMap.put(indexObject.filedName, indexObject.orderedKey);
+                    batch.put(Codec.encodeKey(indexObject.orderedKey, value1), new byte[0]);
+                    Optional.ofNullable(oldKey1).ifPresent(key -> batch.delete(Codec.encodeKey(key, value1)));
+                }
+                return;
+            }
             String key1 = indexObject.toString();
-            String oldKey1 = value2.indexMap.getOrDefault(indexObject.filedName, null);
-            if (oldKey1 == null) {
-                value2.indexMap.put(indexObject.filedName, key1);
-                batch.put(Codec.encode(key1), Codec.encodeKey(value1));
+            if (!indexObject.unique) {
+                String oldKey1 = value2.postingMap.getOrDefault(indexObject.filedName, null);
+                if (!key1.equals(oldKey1)) {
+                    value2.postingMap.put(indexObject.filedName, key1);
+                    batch.put(encodePostingKey(key1, value1), new byte[0]);
+                    Optional.ofNullable(oldKey1).ifPresent(key -> batch.delete(encodePostingKey(key, value1)));
+                }
+                return;
             }
+            String oldKey1 = value2.indexMap.getOrDefault(indexObject.filedName, null);
             if (!key1.equals(oldKey1)) {
                 value2.indexMap.put(indexObject.filedName, key1);
-                batch.put(Codec.encode(key1), Codec.encodeKey(value1));
-                Optional.ofNullable(oldKey1).ifPresent(key -> batch.delete(Codec.encode(key)));
+                batch.put(encodeUniqueKey(key1), Codec.encodeKey(value1));
+                Optional.ofNullable(oldKey1).ifPresent(key -> batch.delete(encodeUniqueKey(key)));
             }
         });
-        batch.put(Codec.encodeKey(key2), Codec.encode(value2));
+        batch.put(encodeMapKey(key2), Codec.encode(value2));
     }
 
 
-    <T extends IOEntity> void setIndex(T t) {
-        engine.writeBatch(batch -> setIndex(batch, t));
-    }
-
-
-    <T extends IOEntity> void setIndexes(List<T> list) {
+    //A document that appears more than once is indexed by its last occurrence, the one that is stored, since the map
+    //of its entries is only read from the engine and an earlier occurrence would leave its entries behind.
+    <T extends IOEntity> void setIndexes(WriteBatch batch, List<T> list) {
         if (list.size() < 1) {
             return;
         }
-        if (!new ReflectObject<>(list.get(0)).containsAnnotation(Index.class)) {
+        if (!hasIndexes(list.get(0))) {
             return;
         }
-        Map<String, Boolean> guardMap = new HashMap<>();
+        Map<Long, T> map = new LinkedHashMap<>();
         list.forEach(t -> {
-            List<IndexObject> indexObjects = extractIndexObjects(t);
+            map.remove(t.objectId());
+            map.put(t.objectId(), t);
+        });
+        Map<String, Boolean> guardMap = new HashMap<>();
+        map.values().forEach(t -> {
+            List<IndexObject> indexObjects = extractIndexObjects(t, null, false);
             indexObjects.forEach(indexObject -> {
+                if (!indexObject.unique) {
+                    return;
+                }
                 String key1 = indexObject.toString();
                 if (guardMap.getOrDefault(key1, false)) {
                     throw new QIOException(key1 + Constants.INDEX_ALREADY_EXISTS);
@@ -127,83 +240,308 @@ final class Indexer {
                 }
             });
         });
-        engine.writeBatch(batch -> list.forEach(t -> setIndex(batch, t)));
+        map.values().forEach(t -> setIndex(batch, t));
     }
 
 
-    void removeIndex(long id) {
-        if (id == 0) return;
-        byte[] valueBytes2 = engine.get(Codec.encodeKey(id));
-        if (valueBytes2 != null) {
-            engine.writeBatch(batch -> {
-                IndexMapObject indexMapObject = Codec.decode(valueBytes2, IndexMapObject.class);
-                indexMapObject.indexMap.values().forEach(key1 -> batch.delete(Codec.encode(key1)));
-                batch.delete(Codec.encodeKey(id));
+    //Writes the entries of an index again for a batch of documents, under the exclusive lock. Nothing is removed
+    //beforehand, so readers and the unique checks of writers go on seeing the entries, and a batch that fails leaves
+    //them as they were. The entries the documents no longer have are removed. A null index name is every index.
+    <T extends IOEntity> void rebuildIndexes(WriteBatch batch, List<T> list, String indexName) {
+        Map<Long, IndexMapObject> maps = new HashMap<>();
+        Set<String> guardSet = new HashSet<>();
+        for (T t : list) {
+            long id = t.objectId();
+            byte[] valueBytes2 = engine.get(encodeMapKey(id));
+            IndexMapObject value2 = (valueBytes2 != null) ? decodeIndexMap(valueBytes2) : new IndexMapObject();
+            TreeMap<byte[], byte[]> entries = new TreeMap<>(Codec::compare);
+            Set<String> names = new HashSet<>();
+            if (indexName != null) {
+                names.add(indexName);
+            } else {
+                names.addAll(value2.indexMap.keySet());
+                names.addAll(value2.postingMap.keySet());
+                names.addAll(value2.orderedMap.keySet());
+            }
+            for (String name : names) {
+                getEntryKeys(value2, name, id).forEach(key -> entries.put(key, null));
+                value2.indexMap.remove(name);
+                value2.postingMap.remove(name);
+                value2.orderedMap.remove(name);
+            }
+            maps.put(id, value2);
+            for (IndexObject indexObject : extractIndexObjects(t, indexName, false)) {
+                String key1 = indexObject.toString();
+                if (indexObject.unique && !guardSet.add(key1)) {
+                    throw new QIOException(key1 + Constants.INDEX_ALREADY_EXISTS);
+                }
+                if (indexObject.orderedKey != null) {
+                    if (indexObject.unique) {
+                        int length = (indexObject.value instanceof List) ? 0 : indexObject.orderedKey.length + Long.BYTES;
+                        Long value1 = engine.iteration(indexObject.orderedKey, (key, value) -> {
+                            long owner = Codec.decodeKey(key);
+                            return ((length == 0 || key.length == length) && owner != id
+                                    && isEntryOf(maps, owner, indexObject.filedName, key)) ? owner : null;
+                        });
+                        if (value1 != null) {
+                            throw new QIOException(indexObject + Constants.INDEX_ALREADY_EXISTS);
+                        }
+                    }
+                    value2.orderedMap.put(indexObject.filedName, indexObject.orderedKey);
+                    entries.put(Codec.encodeKey(indexObject.orderedKey, id), new byte[0]);
+                } else if (!indexObject.unique) {
+                    value2.postingMap.put(indexObject.filedName, key1);
+                    entries.put(encodePostingKey(key1, id), new byte[0]);
+                } else {
+                    byte[] key = encodeUniqueKey(key1);
+                    byte[] valueBytes1 = engine.get(key);
+                    if (valueBytes1 != null && Codec.decodeKey(valueBytes1) != id
+                            && isEntryOf(maps, Codec.decodeKey(valueBytes1), indexObject.filedName, key)) {
+                        throw new QIOException(key1 + Constants.INDEX_ALREADY_EXISTS);
+                    }
+                    value2.indexMap.put(indexObject.filedName, key1);
+                    entries.put(key, Codec.encodeKey(id));
+                }
+            }
+            entries.forEach((key, value) -> {
+                if (value != null) {
+                    batch.put(key, value);
+                } else {
+                    batch.delete(key);
+                }
             });
+            if (value2.indexMap.isEmpty() && value2.postingMap.isEmpty() && value2.orderedMap.isEmpty()) {
+                batch.delete(encodeMapKey(id));
+            } else {
+                batch.put(encodeMapKey(id), Codec.encode(value2));
+            }
         }
     }
 
 
-    <T extends IOEntity> void removeIndex(T t) {
-        removeIndex(t.objectId());
+    //Removes the entries of an index that the map of their document does not list, left by a rebuild or a crash.
+    //The entries are streamed, and checked a bounded batch at a time under the exclusive lock.
+    void sweepIndex(Class<?> tClass, String fieldName) {
+        List<byte[]> keys = new ArrayList<>();
+        for (byte[] keyPrefix : encodeIndexPrefixes(tClass.getSimpleName(), fieldName)) {
+            engine.iteration(keyPrefix, (key, value) -> {
+                keys.add(key);
+                if (keys.size() >= DROP_BATCH_SIZE) {
+                    sweep(keys, fieldName);
+                }
+            });
+            sweep(keys, fieldName);
+        }
     }
 
 
-    void removeIndexes(long... ids) {
-        engine.writeBatch(batch -> {
-            for (long id : ids) {
-                byte[] valueBytes2 = engine.get(Codec.encodeKey(id));
-                if (valueBytes2 != null) {
-                    IndexMapObject value2 = Codec.decode(valueBytes2, IndexMapObject.class);
-                    value2.indexMap.values().forEach(key1 -> batch.delete(Codec.encode(key1)));
-                    batch.delete(Codec.encodeKey(id));
-                }
+    //A unique entry holds the id as its value, the other entries end with it.
+    private void sweep(List<byte[]> keys, String fieldName) {
+        Map<Long, IndexMapObject> maps = new HashMap<>();
+        byte[] uniquePrefix = encodeUniqueKey("");
+        exclusiveWriteBatch(batch -> keys.forEach(key -> {
+            byte[] value = engine.get(key);
+            if (value == null) {
+                return;
+            }
+            long id = Codec.decodeKey(Codec.startsWith(key, uniquePrefix) ? value : key);
+            if (!isEntryOf(maps, id, fieldName, key)) {
+                batch.delete(key);
             }
+        }));
+        keys.clear();
+    }
+
+
+    //Whether the entry is listed in the map of the document, the maps of the current batch taking the place of
+    //the stored ones.
+    private boolean isEntryOf(Map<Long, IndexMapObject> maps, long id, String name, byte[] key) {
+        IndexMapObject value2 = maps.computeIfAbsent(id, k -> {
+            byte[] valueBytes2 = engine.get(encodeMapKey(k));
+            return (valueBytes2 != null) ? decodeIndexMap(valueBytes2) : new IndexMapObject();
         });
+        return getEntryKeys(value2, name, id).stream().anyMatch(entryKey -> Arrays.equals(entryKey, key));
+    }
+
+
+    private List<byte[]> getEntryKeys(IndexMapObject value2, String name, long id) {
+        List<byte[]> keys = new ArrayList<>();
+        Optional.ofNullable(value2.indexMap.get(name)).ifPresent(key1 -> keys.add(encodeUniqueKey(key1)));
+        Optional.ofNullable(value2.postingMap.get(name)).ifPresent(key1 -> keys.add(encodePostingKey(key1, id)));
+        Optional.ofNullable(value2.orderedMap.get(name)).ifPresent(key1 -> keys.add(Codec.encodeKey(key1, id)));
+        return keys;
     }
 
 
-    void removeIndexes(List<Long> ids) {
-        long[] idArray = new long[ids.size()];
-        for (int i = 0, len = ids.size(); i < len; i++) {
-            idArray[i] = ids.get(i);
+    //For documents whose ids were just generated, which have no entries to replace. The unique keys of the whole
+    //batch are looked up in key order through one iterator, instead of one lookup per field per document. The guard
+    //set holds the unique keys already taken by the documents before them, and takes theirs.
+    <T extends IOEntity> void addIndexes(List<T> list, List<byte[][]> entries, Set<String> guardSet) {
+        if (list.isEmpty() || !hasIndexes(list.get(0))) {
+            return;
+        }
+        TreeMap<byte[], Probe> probes = new TreeMap<>(Codec::compare);
+        for (T t : list) {
+            long id = t.objectId();
+            List<IndexObject> indexObjects = extractIndexObjects(t, null, false);
+            IndexMapObject value2 = new IndexMapObject();
+            for (IndexObject indexObject : indexObjects) {
+                String key1 = indexObject.toString();
+                if (indexObject.unique && !guardSet.add(key1)) {
+                    throw new QIOException(key1 + Constants.INDEX_ALREADY_EXISTS);
+                }
+                if (indexObject.orderedKey != null) {
+                    if (indexObject.unique) {
+                        int length = (indexObject.value instanceof List) ? 0 : indexObject.orderedKey.length + Long.BYTES;
+                        probes.put(indexObject.orderedKey, new Probe(indexObject, length));
+                    }
+                    value2.orderedMap.put(indexObject.filedName, indexObject.orderedKey);
+                    entries.add(new byte[][]{Codec.encodeKey(indexObject.orderedKey, id), new byte[0]});
+                } else if (!indexObject.unique) {
+                    value2.postingMap.put(indexObject.filedName, key1);
+                    entries.add(new byte[][]{encodePostingKey(key1, id), new byte[0]});
+                } else {
+                    byte[] key = encodeUniqueKey(key1);
+                    probes.put(key, new Probe(indexObject, key.length));
+                    value2.indexMap.put(indexObject.filedName, key1);
+                    entries.add(new byte[][]{key, Codec.encodeKey(id)});
+                }
+            }
+            if (!indexObjects.isEmpty()) {
+                entries.add(new byte[][]{encodeMapKey(id), Codec.encode(value2)});
+            }
+        }
+        try (DBIterator iterator = engine.iterator()) {
+            for (Map.Entry<byte[], Probe> probe : probes.entrySet()) {
+                for (iterator.seek(probe.getKey()); iterator.hasNext(); iterator.next()) {
+                    byte[] key = iterator.peekNext().getKey();
+                    if (!startsWith(key, probe.getKey())) {
+                        break;
+                    }
+                    if (probe.getValue().length == 0 || key.length == probe.getValue().length) {
+                        throw new QIOException(probe.getValue().indexObject + Constants.INDEX_ALREADY_EXISTS);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    void removeIndex(WriteBatch batch, long id) {
+        if (id == 0) return;
+        byte[] valueBytes2 = engine.get(encodeMapKey(id));
+        if (valueBytes2 != null) {
+            IndexMapObject value2 = decodeIndexMap(valueBytes2);
+            value2.indexMap.values().forEach(key1 -> batch.delete(encodeUniqueKey(key1)));
+            value2.postingMap.values().forEach(key1 -> batch.delete(encodePostingKey(key1, id)));
+            value2.orderedMap.values().forEach(key1 -> batch.delete(Codec.encodeKey(key1, id)));
+            batch.delete(encodeMapKey(id));
+        }
+    }
+
+
+    void removeIndexes(WriteBatch batch, long... ids) {
+        for (long id : ids) {
+            removeIndex(batch, id);
         }
-        removeIndexes(idArray);
     }
 
 
-    <T extends IOEntity> void removeIndexList(List<T> list) {
-        List<Long> ids = list.stream().map(IOEntity::objectId).filter(id -> id != 0).collect(Collectors.toList());
-        removeIndexes(ids);
+    void removeIndexes(WriteBatch batch, List<Long> ids) {
+        ids.forEach(id -> removeIndex(batch, id));
+    }
+
+
+    //Removes every entry of the collection, for when all of its documents are deleted.
+    void clear() {
+        engine.deleteRange(prefix, Codec.nextPrefix(prefix));
+    }
+
+
+    //Streams over the entries of the index instead of the documents, and then removes the index from their maps,
+    //a bounded batch at a time, so dropping an index never holds the collection in memory. Writers wait until the
+    //index is gone, so that none of them adds an entry between the two steps.
+    void dropIndex(Class<?> tClass, String fieldName) {
+        lock.writeLock().lock();
+        try {
+            encodeIndexPrefixes(tClass.getSimpleName(), fieldName).forEach(this::deleteAll);
+            List<byte[]> keys = new ArrayList<>();
+            engine.iteration(Codec.concat(prefix, new byte[]{'@'}), (key, value) -> {
+                keys.add(key);
+                if (keys.size() >= DROP_BATCH_SIZE) {
+                    removeFromMaps(keys, fieldName);
+                }
+            });
+            removeFromMaps(keys, fieldName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    private void deleteAll(byte[] keyPrefix) {
+        List<byte[]> keys = new ArrayList<>();
+        engine.iteration(keyPrefix, (key, value) -> {
+            keys.add(key);
+            if (keys.size() >= DROP_BATCH_SIZE) {
+                engine.writeBatch(batch -> keys.forEach(batch::delete));
+                keys.clear();
+            }
+        });
+        engine.writeBatch(batch -> keys.forEach(batch::delete));
     }
 
 
-    <T extends IOEntity> void dropIndex(List<T> list, String fieldName) {
-        engine.writeBatch(batch -> list.forEach(t -> {
-            byte[] valueBytes2 = engine.get(Codec.encode(t.objectId()));
+    private void removeFromMaps(List<byte[]> keys, String fieldName) {
+        exclusiveWriteBatch(batch -> keys.forEach(key -> {
+            byte[] valueBytes2 = engine.get(key);
             if (valueBytes2 != null) {
-                IndexMapObject value2 = Codec.decode(valueBytes2, IndexMapObject.class);
-                String key1 = value2.indexMap.getOrDefault(fieldName, null);
-                Optional.ofNullable(key1).ifPresent(key -> batch.delete(Codec.encode(key)));
+                IndexMapObject value2 = decodeIndexMap(valueBytes2);
+                boolean removed = value2.indexMap.remove(fieldName) != null;
+                removed |= value2.postingMap.remove(fieldName) != null;
+                removed |= value2.orderedMap.remove(fieldName) != null;
+                if (removed) {
+                    batch.put(key, Codec.encode(value2));
+                }
             }
         }));
+        keys.clear();
     }
 
 
-     long getIndexId(Class<?> tClass, String fieldName, Object filedValue) {
-         try {
-            if (tClass.getDeclaredField(fieldName).isAnnotationPresent(Index.class)) {
-                IndexObject indexObject = new IndexObject(tClass.getSimpleName(), fieldName, filedValue);
-                String key1 = indexObject.toString();
-                byte[] keyBytes1 = Codec.encode(key1);
-                byte[] valueBytes1 = engine.get(keyBytes1);
-                return (valueBytes1 != null) ? Codec.decodeKey(valueBytes1) : 0;
-            } else {
-                throw new QIOException(Constants.NON_INDEXED_FIELD);
-            }
-        } catch (NoSuchFieldException e) {
-            throw new QIOException(Constants.NON_INDEXED_FIELD);
+    long getIndexId(Class<?> tClass, String fieldName, Object filedValue) {
+        Field field = getIndexField(tClass, fieldName);
+        Index index = field.getAnnotation(Index.class);
+        String key1 = new IndexObject(tClass.getSimpleName(), fieldName, filedValue, index.unique()).toString();
+        if (index.unique() && !index.ordered()) {
+            byte[] valueBytes1 = engine.get(encodeUniqueKey(key1));
+            return (valueBytes1 != null) ? Codec.decodeKey(valueBytes1) : 0;
         }
+        byte[] prefix = index.ordered() ? encodeOrderedKey(tClass.getSimpleName(), field, filedValue) : encodePostingPrefix(key1);
+        Long id = engine.iteration(prefix, (key, value) -> (key.length == prefix.length + Long.BYTES) ? Codec.decodeKey(key) : null);
+        return (id != null) ? id : 0;
+    }
+
+
+    List<Long> getIndexIds(Class<?> tClass, String fieldName, Object filedValue) {
+        Field field = getIndexField(tClass, fieldName);
+        Index index = field.getAnnotation(Index.class);
+        String key1 = new IndexObject(tClass.getSimpleName(), fieldName, filedValue, index.unique()).toString();
+        List<Long> ids = new ArrayList<>();
+        if (index.unique() && !index.ordered()) {
+            byte[] valueBytes1 = engine.get(encodeUniqueKey(key1));
+            Optional.ofNullable(valueBytes1).ifPresent(bytes -> ids.add(Codec.decodeKey(bytes)));
+            return ids;
+        }
+        byte[] prefix = index.ordered() ? encodeOrderedKey(tClass.getSimpleName(), field, filedValue) : encodePostingPrefix(key1);
+        engine.iteration(prefix, (key, value) -> {
+            if (key.length == prefix.length + Long.BYTES) {
+                ids.add(Codec.decodeKey(key));
+            }
+        });
+        return ids;
     }
 
 
@@ -212,17 +550,134 @@ final class Indexer {
     }
 
 
-    private <T extends IOEntity> List<IndexObject> extractIndexObjects(T t) {
+    long getIndexId(Class<?> tClass, String[] fieldNames, Object[] fieldValues) {
+        CompoundIndex index = getCompoundIndex(tClass, fieldNames);
+        byte[] prefix = encodeCompoundKey(tClass, index.fields(), fieldValues);
+        Long id = engine.iteration(prefix, (key, value) -> {
+            return Codec.decodeKey(key);
+        });
+        return (id != null) ? id : 0;
+    }
+
+
+    List<Long> getIndexIds(Class<?> tClass, String[] fieldNames, Object[] fieldValues) {
+        CompoundIndex index = getCompoundIndex(tClass, fieldNames);
+        byte[] prefix = encodeCompoundKey(tClass, index.fields(), fieldValues);
+        List<Long> ids = new ArrayList<>();
+        engine.iteration(prefix, (key, value) -> {
+            ids.add(Codec.decodeKey(key));
+        });
+        return ids;
+    }
+
+
+    //A compound index is named after its fields, joined by commas.
+    boolean isIndexed(Class<?> tClass, String fieldName) {
+        for (CompoundIndex index : tClass.getAnnotationsByType(CompoundIndex.class)) {
+            if (String.join(",", index.fields()).equals(fieldName)) {
+                return true;
+            }
+        }
+        try {
+            return tClass.getDeclaredField(fieldName).isAnnotationPresent(Index.class);
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+
+
+    boolean isOrdered(Class<?> tClass, String fieldName) {
+        try {
+            Index index = tClass.getDeclaredField(fieldName).getAnnotation(Index.class);
+            return index != null && index.ordered();
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+
+
+    //Walks the ids of an ordered index between the bounds, a null bound is open. True is to continue, false is to break.
+    void traverseOrdered(Class<?> tClass, String fieldName, Object lower, boolean lowerInclusive,
+                         Object upper, boolean upperInclusive, boolean reverse, Function<Long, Boolean> function) {
+        Field field = getIndexField(tClass, fieldName);
+        if (!field.getAnnotation(Index.class).ordered()) {
+            throw new QIOException(Constants.NON_ORDERED_INDEXED_FIELD);
+        }
+        byte[] prefix = encodeOrderedPrefix(tClass.getSimpleName(), fieldName);
+        byte[] start = prefix;
+        byte[] end = Codec.successor(prefix);
+        if (lower != null) {
+            start = encodeOrderedKey(tClass.getSimpleName(), field, lower);
+            start = lowerInclusive ? start : Codec.encodeKey(start, -1L);
+        }
+        if (upper != null) {
+            end = encodeOrderedKey(tClass.getSimpleName(), field, upper);
+            end = upperInclusive ? Codec.encodeKey(end, -1L) : end;
+        }
+        BiFunction<byte[], byte[], Boolean> f = (key, value) -> {
+            Boolean b = function.apply(Codec.decodeKey(key));
+            return b ? null : b;
+        };
+        if (reverse) {
+            engine.reverseIteration(start, end, f);
+        } else {
+            engine.iteration(start, end, f);
+        }
+    }
+
+
+    private static <T extends IOEntity> boolean hasIndexes(T t) {
+        return new ReflectObject<>(t).containsAnnotation(Index.class)
+                || t.getClass().isAnnotationPresent(CompoundIndex.class)
+                || t.getClass().isAnnotationPresent(CompoundIndexes.class);
+    }
+
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    //Without a check, the unique values are not looked up in the engine, for callers that look them up themselves.
+    private <T extends IOEntity> List<IndexObject> extractIndexObjects(T t, String indexName, boolean check) {
         String className = t.getClass().getSimpleName();
         List<IndexObject> indexObjects = new ArrayList<>();
         ReflectObject<T> reflectObject = new ReflectObject<>(t);
         reflectObject.traverseAnnotationFields(Index.class, (fieldName, fieldValue) -> {
-            if (fieldValue == null) {
+            if (fieldValue == null || (indexName != null && !indexName.equals(fieldName))) {
+                return;
+            }
+            Index index = reflectObject.getAnnotation(fieldName, Index.class);
+            boolean unique = index.unique();
+            IndexObject indexObject = new IndexObject(className, fieldName, fieldValue, unique);
+            if (index.ordered()) {
+                byte[] prefix = Codec.concat(encodeOrderedPrefix(className, fieldName),
+                        Codec.encodeOrdered(fieldValue.getClass(), fieldValue));
+                Long id = (!unique || !check) ? null : engine.iteration(prefix, (key, value) -> {
+                    long value1 = Codec.decodeKey(key);
+                    return (key.length == prefix.length + Long.BYTES && value1 != t.objectId()) ? value1 : null;
+                });
+                if (id != null) {
+                    throw new QIOException(indexObject + Constants.INDEX_ALREADY_EXISTS);
+                }
+                indexObject.orderedKey = prefix;
+                indexObjects.add(indexObject);
+                return;
+            }
+            if (!unique) {
+                indexObjects.add(indexObject);
                 return;
             }
-            IndexObject indexObject = new IndexObject(className, fieldName, fieldValue);
             String key1 = indexObject.toString();
-            byte[] valueBytes1 = engine.get(Codec.encode(key1));
+            byte[] valueBytes1 = !check ? null : engine.get(encodeUniqueKey(key1));
             if (valueBytes1 != null) {
                 long value1 = Codec.decodeKey(valueBytes1);
                 if (value1 != t.objectId()) {
@@ -231,7 +686,131 @@ final class Indexer {
             }
             indexObjects.add(indexObject);
         });
+        for (CompoundIndex index : t.getClass().getAnnotationsByType(CompoundIndex.class)) {
+            Object[] values = new Object[index.fields().length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = reflectObject.getValue(index.fields()[i]);
+            }
+            String fieldName = String.join(",", index.fields());
+            if (Arrays.asList(values).contains(null) || (indexName != null && !indexName.equals(fieldName))) {
+                continue;
+            }
+            IndexObject indexObject = new IndexObject(className, fieldName, Arrays.asList(values), index.unique());
+            byte[] prefix = encodeCompoundKey(t.getClass(), index.fields(), values);
+            Long id = (!index.unique() || !check) ? null : engine.iteration(prefix, (key, value) -> {
+                long value1 = Codec.decodeKey(key);
+                return (value1 != t.objectId()) ? value1 : null;
+            });
+            if (id != null) {
+                throw new QIOException(indexObject + Constants.INDEX_ALREADY_EXISTS);
+            }
+            indexObject.orderedKey = prefix;
+            indexObjects.add(indexObject);
+        }
         return indexObjects;
     }
 
+
+    private static Field getIndexField(Class<?> tClass, String fieldName) {
+        try {
+            Field field = tClass.getDeclaredField(fieldName);
+            if (!field.isAnnotationPresent(Index.class)) {
+                throw new QIOException(Constants.NON_INDEXED_FIELD);
+            }
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new QIOException(Constants.NON_INDEXED_FIELD);
+        }
+    }
+
+
+    private static CompoundIndex getCompoundIndex(Class<?> tClass, String[] fieldNames) {
+        for (CompoundIndex index : tClass.getAnnotationsByType(CompoundIndex.class)) {
+            String[] fields = index.fields();
+            if (fields.length >= fieldNames.length && Arrays.equals(Arrays.copyOf(fields, fieldNames.length), fieldNames)) {
+                return index;
+            }
+        }
+        throw new QIOException(Constants.NON_INDEXED_FIELD);
+    }
+
+
+    //Every key of a map starts with "[Class," or, for ordered ones, with a kind character and "[Class,".
+    private static String getClassName(IndexMapObject value2) {
+        List<String> keys = new ArrayList<>(value2.indexMap.values());
+        keys.addAll(value2.postingMap.values());
+        value2.orderedMap.values().forEach(key1 -> keys.add(new String(key1, 1, key1.length - 1, StandardCharsets.UTF_8)));
+        return keys.isEmpty() ? null : keys.get(0).substring(1, keys.get(0).indexOf(','));
+    }
+
+
+    private static IndexMapObject decodeIndexMap(byte[] bytes) {
+        IndexMapObject indexMapObject = Codec.decode(bytes, IndexMapObject.class);
+        if (indexMapObject.postingMap == null) {
+            indexMapObject.postingMap = new HashMap<>();
+        }
+        if (indexMapObject.orderedMap == null) {
+            indexMapObject.orderedMap = new HashMap<>();
+        }
+        return indexMapObject;
+    }
+
+
+    //The unique, posting, ordered and compound entries of an index, whichever kind it is declared as now.
+    private List<byte[]> encodeIndexPrefixes(String className, String fieldName) {
+        String key1 = "[" + className + "," + fieldName + ",";
+        return Arrays.asList(encodeUniqueKey(key1),
+                Codec.concat(prefix, ("#" + key1).getBytes(StandardCharsets.UTF_8)),
+                encodeOrderedPrefix(className, fieldName),
+                Codec.concat(prefix, Codec.concat(("&[" + className + "," + fieldName + "]").getBytes(StandardCharsets.UTF_8), new byte[]{0})));
+    }
+
+
+    //Every document with indexed fields keeps a map of its index entries, "@" + id, to remove or replace them.
+    private byte[] encodeMapKey(long id) {
+        return Codec.encodeKey(Codec.concat(prefix, new byte[]{'@'}), id);
+    }
+
+
+    //A unique value keeps a single entry, "=[Class,field,value]", whose value is the id.
+    private byte[] encodeUniqueKey(String key1) {
+        return Codec.concat(prefix, ("=" + key1).getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    //A non-unique value keeps one posting entry per document, "#[Class,field,value]" + 0 + id,
+    //so all the documents sharing the value are read with a single prefix scan.
+    private byte[] encodePostingPrefix(String key1) {
+        return Codec.concat(prefix, Codec.concat(("#" + key1).getBytes(StandardCharsets.UTF_8), new byte[]{0}));
+    }
+
+
+    private byte[] encodePostingKey(String key1, long id) {
+        return Codec.encodeKey(encodePostingPrefix(key1), id);
+    }
+
+
+    //An ordered index keeps one entry per document, "~[Class,field]" + 0 + ordered value + id,
+    //so the entries of a field are sorted by value, and then by id.
+    private byte[] encodeOrderedPrefix(String className, String fieldName) {
+        return Codec.concat(prefix, Codec.concat(("~[" + className + "," + fieldName + "]").getBytes(StandardCharsets.UTF_8), new byte[]{0}));
+    }
+
+
+    //A compound index keeps one entry per document, "&[Class,field1,field2...]" + 0 + ordered values + id.
+    //No ordered value is the prefix of another one, so the leading values alone are a prefix of the entries.
+    private byte[] encodeCompoundKey(Class<?> tClass, String[] fieldNames, Object[] fieldValues) {
+        String name = "&[" + tClass.getSimpleName() + "," + String.join(",", fieldNames) + "]";
+        byte[] key = Codec.concat(prefix, Codec.concat(name.getBytes(StandardCharsets.UTF_8), new byte[]{0}));
+        for (int i = 0; i < fieldValues.length; i++) {
+            key = Codec.concat(key, Codec.encodeOrdered(ReflectObject.getField(tClass, fieldNames[i]).getType(), fieldValues[i]));
+        }
+        return key;
+    }
+
+
+    private byte[] encodeOrderedKey(String className, Field field, Object value) {
+        return Codec.concat(encodeOrderedPrefix(className, field.getName()), Codec.encodeOrdered(field.getType(), value));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.annotations.Index;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+final class Planner {
+
+    //From the cheapest to the most expensive.
+    enum Type {ID_LOOKUP, UNIQUE_INDEX_LOOKUP, INDEX_LOOKUP, ID_RANGE, INDEX_RANGE, INDEX_UNION, FULL_SCAN}
+
+
+    static class Plan {
+        final Type type;
+        final String fieldName;
+        Object[] values;
+        Object lowerValue;
+        boolean lowerInclusive;
+        Object upperValue;
+        boolean upperInclusive;
+        long fromId = 0;
+        long toId = Long.MAX_VALUE;
+        List<Plan> plans;
+
+        Plan(Type type, String fieldName) {
+            this.type = type;
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public String toString() {
+            if (type == Type.INDEX_UNION) {
+                return plans.stream().map(Plan::toString).collect(Collectors.joining(", ", type + "(", ")"));
+            }
+            return (fieldName != null) ? type + "(" + fieldName + ")" : type.toString();
+        }
+    }
+
+
+    //Picks the cheapest condition that an id or an index can answer, the whole filter is still tested on
+    //every document it yields. An "or" can only use indexes when every one of its branches can.
+    static Plan plan(Class<?> clazz, Filter filter) {
+        if (filter.operator == Filter.Operator.OR) {
+            List<Plan> plans = Arrays.stream(filter.filters).map(f -> plan(clazz, f)).collect(Collectors.toList());
+            if (plans.stream().anyMatch(plan -> plan.type == Type.FULL_SCAN)) {
+                return new Plan(Type.FULL_SCAN, null);
+            }
+            Plan plan = new Plan(Type.INDEX_UNION, null);
+            plan.plans = plans;
+            return plan;
+        }
+        List<Filter> conditions = new ArrayList<>();
+        flatten(filter, conditions);
+        List<Plan> plans = new ArrayList<>();
+        Map<String, Plan> ranges = new LinkedHashMap<>();
+        for (Filter condition : conditions) {
+            switch (condition.operator) {
+                case OR:
+                    plans.add(plan(clazz, condition));
+                    break;
+                case EQ:
+                case IN:
+                    plans.add(lookup(clazz, condition));
+                    break;
+                case GT:
+                case GTE:
+                case LT:
+                case LTE:
+                    Plan range = ranges.computeIfAbsent(condition.fieldName, name -> range(clazz, name));
+                    narrow(range, condition);
+                    break;
+            }
+        }
+        ranges.values().forEach(plan -> plans.add(toIdRange(plan)));
+        return plans.stream().min(Comparator.comparing(plan -> plan.type)).orElse(new Plan(Type.FULL_SCAN, null));
+    }
+
+
+    private static void flatten(Filter filter, List<Filter> conditions) {
+        if (filter.operator == Filter.Operator.AND) {
+            Arrays.stream(filter.filters).forEach(f -> flatten(f, conditions));
+        } else {
+            conditions.add(filter);
+        }
+    }
+
+
+    //Ids are numbers, any other value is left to the filter, which tests it against every document.
+    private static Plan lookup(Class<?> clazz, Filter condition) {
+        if ("_id".equals(condition.fieldName)) {
+            if (!Arrays.stream(condition.values).allMatch(value -> value instanceof Number)) {
+                return new Plan(Type.FULL_SCAN, null);
+            }
+            Plan plan = new Plan(Type.ID_LOOKUP, condition.fieldName);
+            plan.values = condition.values;
+            return plan;
+        }
+        Field field = ReflectObject.getField(clazz, condition.fieldName);
+        Index index = field.getAnnotation(Index.class);
+        if (index == null) {
+            return new Plan(Type.FULL_SCAN, null);
+        }
+        Type type = (index.unique() && !index.ordered()) ? Type.UNIQUE_INDEX_LOOKUP : Type.INDEX_LOOKUP;
+        Plan plan = new Plan(type, condition.fieldName);
+        plan.values = Arrays.stream(condition.values).map(value -> coerce(field.getType(), value)).toArray();
+        return plan;
+    }
+
+
+    private static Plan range(Class<?> clazz, String fieldName) {
+        if ("_id".equals(fieldName) || "createdAt".equals(fieldName)) {
+            return new Plan(Type.ID_RANGE, fieldName);
+        }
+        Index index = ReflectObject.getField(clazz, fieldName).getAnnotation(Index.class);
+        return (index != null && index.ordered()) ? new Plan(Type.INDEX_RANGE, fieldName) : new Plan(Type.FULL_SCAN, null);
+    }
+
+
+    //Keeps the tightest of the bounds given to the same field.
+    private static void narrow(Plan plan, Filter condition) {
+        Object value = condition.values[0];
+        boolean inclusive = condition.operator == Filter.Operator.GTE || condition.operator == Filter.Operator.LTE;
+        if (condition.operator == Filter.Operator.GT || condition.operator == Filter.Operator.GTE) {
+            int c = (plan.lowerValue == null) ? 1 : Filter.compare(value, plan.lowerValue);
+            if (c > 0 || (c == 0 && !inclusive)) {
+                plan.lowerValue = value;
+                plan.lowerInclusive = inclusive;
+            }
+        } else {
+            int c = (plan.upperValue == null) ? -1 : Filter.compare(value, plan.upperValue);
+            if (c < 0 || (c == 0 && !inclusive)) {
+                plan.upperValue = value;
+                plan.upperInclusive = inclusive;
+            }
+        }
+    }
+
+
+    //Ids grow with their creation time, so a range of either one is a range of keys.
+    private static Plan toIdRange(Plan plan) {
+        if (plan.type != Type.ID_RANGE) {
+            return plan;
+        }
+        if ((plan.lowerValue != null && !(plan.lowerValue instanceof Number))
+                || (plan.upperValue != null && !(plan.upperValue instanceof Number))) {
+            return new Plan(Type.FULL_SCAN, null);
+        }
+        boolean time = "createdAt".equals(plan.fieldName);
+        if (plan.lowerValue != null) {
+            long value = lowerBound((Number) plan.lowerValue, plan.lowerInclusive);
+            plan.fromId = time ? Plugin.toMinId(value) : value;
+        }
+        if (plan.upperValue != null) {
+            long value = upperBound((Number) plan.upperValue, plan.upperInclusive);
+            plan.toId = time ? Plugin.toMaxId(value) : value;
+        }
+        return plan;
+    }
+
+
+    //The smallest whole number above a lower bound. A fractional bound rounds up, a whole one moves by one when exclusive.
+    private static long lowerBound(Number number, boolean inclusive) {
+        double value = number.doubleValue();
+        if (!Filter.isIntegral(number) && value != Math.floor(value)) {
+            return (long) Math.ceil(value);
+        }
+        return number.longValue() + (inclusive ? 0 : 1);
+    }
+
+
+    //The largest whole number below an upper bound. A fractional bound rounds down, a whole one moves by one when exclusive.
+    private static long upperBound(Number number, boolean inclusive) {
+        double value = number.doubleValue();
+        if (!Filter.isIntegral(number) && value != Math.floor(value)) {
+            return (long) Math.floor(value);
+        }
+        return number.longValue() - (inclusive ? 0 : 1);
+    }
+
+
+    //Unique and non-ordered index keys hold the value as written, so a lookup value takes the type of the field.
+    private static Object coerce(Class<?> type, Object value) {
+        if (!(value instanceof Number)) {
+            return value;
+        }
+        Number number = (Number) value;
+        switch (type.getSimpleName().toLowerCase()) {
+            case "byte": return number.byteValue();
+            case "short": return number.shortValue();
+            case "int":
+            case "integer": return number.intValue();
+            case "long": return number.longValue();
+            case "float": return number.floatValue();
+            case "double": return number.doubleValue();
+            default: return value;
+        }
+    }
+
+}
@@ -38,11 +38,26 @@ class Plugin {
     }
 
 
+    static long[] generateIds(int count) {
+        return snowflake.nextIds(count);
+    }
+
+
     public static long toTimestamp(long id) {
         return snowflake.toTimestamp(id);
     }
 
 
+    static long toMinId(long timestamp) {
+        return snowflake.toMinId(timestamp);
+    }
+
+
+    static long toMaxId(long timestamp) {
+        return snowflake.toMaxId(timestamp);
+    }
+
+
     public static String toDateTime(long timestamp) {
         return Instant.ofEpochMilli(timestamp)
                 .atZone(ZoneId.systemDefault())
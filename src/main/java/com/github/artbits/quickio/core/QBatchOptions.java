@@ -0,0 +1,65 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.BatchOptions;
+import com.github.artbits.quickio.exception.QIOException;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+final class QBatchOptions implements BatchOptions {
+
+    private final static int DEFAULT_BATCH_SIZE = 10000;
+
+    int batchSize = DEFAULT_BATCH_SIZE;
+    LongConsumer progress;
+    private final AtomicLong affected = new AtomicLong(0);
+
+
+    @Override
+    public BatchOptions batchSize(int size) {
+        if (size <= 0) {
+            throw new QIOException(Constants.BATCH_SIZE_ILLEGAL);
+        }
+        this.batchSize = size;
+        return this;
+    }
+
+
+    @Override
+    public BatchOptions progress(LongConsumer consumer) {
+        this.progress = consumer;
+        return this;
+    }
+
+
+    //Called once a batch is written, with the number of documents it held.
+    void written(int size) {
+        long total = affected.addAndGet(size);
+        if (progress != null && size > 0) {
+            progress.accept(total);
+        }
+    }
+
+
+    long affected() {
+        return affected.get();
+    }
+
+}
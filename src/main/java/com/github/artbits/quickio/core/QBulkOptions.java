@@ -0,0 +1,61 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.BulkOptions;
+import com.github.artbits.quickio.api.BulkReport;
+import com.github.artbits.quickio.exception.QIOException;
+
+import java.util.function.Consumer;
+
+final class QBulkOptions implements BulkOptions {
+
+    private final static int DEFAULT_BATCH_SIZE = 10000;
+
+    int batchSize = DEFAULT_BATCH_SIZE;
+    boolean deferIndexes;
+    Consumer<BulkReport> progress;
+
+
+    @Override
+    public BulkOptions batchSize(int size) {
+        if (size <= 0) {
+            throw new QIOException(Constants.BATCH_SIZE_ILLEGAL);
+        }
+        this.batchSize = size;
+        return this;
+    }
+
+
+    //Index entries are left out while loading, and built in one pass over the loaded documents at the end.
+    //Unique values are still checked before every batch is written, against the store and the rest of the load,
+    //but a value that another writer saves during the load only fails the build at the end.
+    @Override
+    public BulkOptions deferIndexes() {
+        this.deferIndexes = true;
+        return this;
+    }
+
+
+    @Override
+    public BulkOptions progress(Consumer<BulkReport> consumer) {
+        this.progress = consumer;
+        return this;
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.BulkReport;
+
+import java.util.concurrent.TimeUnit;
+
+final class QBulkReport implements BulkReport {
+
+    private final long startTime = System.nanoTime();
+    private long count;
+
+
+    void add(int size) {
+        count += size;
+    }
+
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+
+    @Override
+    public long elapsed() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+
+    //Documents per second since the load started.
+    @Override
+    public double rate() {
+        long nanos = System.nanoTime() - startTime;
+        return (nanos == 0) ? 0 : count * 1e9 / nanos;
+    }
+
+
+    @Override
+    public String toString() {
+        return "count: " + count + ", elapsed: " + elapsed() + "ms, rate: " + String.format("%.1f", rate()) + "/s";
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.CacheStats;
+
+final class QCacheStats implements CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+    private final long bytes;
+
+
+    QCacheStats(long hits, long misses, long evictions, long size, long bytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+
+    @Override
+    public long hits() {
+        return hits;
+    }
+
+
+    @Override
+    public long misses() {
+        return misses;
+    }
+
+
+    @Override
+    public double hitRate() {
+        return (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+    }
+
+
+    @Override
+    public long evictions() {
+        return evictions;
+    }
+
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+
+    @Override
+    public long bytes() {
+        return bytes;
+    }
+
+
+    @Override
+    public String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", hit rate: " + String.format("%.3f", hitRate())
+                + ", evictions: " + evictions + ", size: " + size + ", bytes: " + bytes;
+    }
+
+}
@@ -16,46 +16,83 @@
 
 package com.github.artbits.quickio.core;
 
+import com.github.artbits.quickio.annotations.Version;
+import com.github.artbits.quickio.api.BatchOptions;
+import com.github.artbits.quickio.api.BulkOptions;
+import com.github.artbits.quickio.api.BulkReport;
+import com.github.artbits.quickio.api.CacheStats;
 import com.github.artbits.quickio.api.Collection;
+import com.github.artbits.quickio.api.Cursor;
+import com.github.artbits.quickio.api.Explain;
 import com.github.artbits.quickio.api.FindOptions;
+import com.github.artbits.quickio.api.Group;
+import com.github.artbits.quickio.api.IndexTask;
+import com.github.artbits.quickio.api.Stats;
 import com.github.artbits.quickio.exception.QIOException;
 import org.iq80.leveldb.api.DBException;
+import org.iq80.leveldb.api.WriteBatch;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 final class QCollection<T extends IOEntity> implements Collection<T> {
 
     private final EngineIO engine;
     private final Indexer indexer;
+    private final Counter<T> counter;
+    private final EntityCache<T> cache;
+    private final Scanner scanner;
+    private final Committer committer;
     private final Class<T> clazz;
+    private final byte[] prefix;
+    private final Field versionField;
 
 
-    QCollection(Class<T> clazz, EngineIO engine, Indexer indexer) {
+    QCollection(Class<T> clazz, EngineIO engine, Indexer indexer, Counter<T> counter, EntityCache<T> cache, Scanner scanner,
+                Committer committer, Catalog catalog) {
         this.clazz = clazz;
         this.engine = engine;
         this.indexer = indexer;
+        this.counter = counter;
+        this.cache = cache;
+        this.scanner = scanner;
+        this.committer = committer;
+        this.prefix = catalog.prefix(clazz);
+        this.versionField = versionField(clazz);
     }
 
 
     @Override
     public void save(T t) {
-        if (t.objectId() == 0 || Plugin.getDigit(t.objectId()) < 18) {
-            t._id = Plugin.generateId();
-            t.createdAt = Plugin.toTimestamp(t.objectId());
-        }
-        indexer.setIndex(t);
         try {
-            engine.put(Codec.encodeKey(t.objectId()), Codec.encode(t));
+            writeBatch(saver(t));
         } catch (DBException e) {
-            indexer.removeIndex(t);
             throw new QIOException(e);
         }
     }
@@ -63,44 +100,81 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
 
     @Override
     public void save(List<T> list) {
-        list.forEach(t -> {
-            if (t.objectId() == 0 || Plugin.getDigit(t.objectId()) < 18) {
-                t._id = Plugin.generateId();
-                t.createdAt = Plugin.toTimestamp(t.objectId());
-            }
-        });
-        indexer.setIndexes(list);
         try {
-            engine.writeBatch(batch -> list.forEach(t -> batch.put(Codec.encodeKey(t.objectId()), Codec.encode(t))));
-        } catch (Exception e) {
-            indexer.removeIndexList(list);
+            writeBatch(saver(list));
+        } catch (DBException e) {
             throw new QIOException(e);
         }
     }
 
 
     @Override
-    public void update(T t, Predicate<T> predicate) {
-        List<T> newLocalTList = new ArrayList<>();
-        List<T> oldLocalTList = new ArrayList<>();
-        ReflectObject<T> tObject = new ReflectObject<>(t);
-        engine.iteration((key, value) -> {
-            T localT = Codec.decode(value, clazz);
-            if (localT != null && predicate.test(localT)) {
-                oldLocalTList.add(Codec.clone(localT, clazz));
-                ReflectObject<T> object = new ReflectObject<>(localT);
-                tObject.traverseFields((name, value1) -> Optional.ofNullable(value1).ifPresent(v -> object.setValue(name, v)));
-                newLocalTList.add(object.get());
-            }
-        });
-        indexer.setIndexes(newLocalTList);
+    public CompletableFuture<Void> saveAsync(T t) {
+        return submit(saver(t));
+    }
+
+
+    @Override
+    public CompletableFuture<Void> saveAsync(List<T> list) {
+        return submit(saver(new ArrayList<>(list)));
+    }
+
+
+    @Override
+    public BulkReport bulkSave(Iterable<T> iterable, Consumer<BulkOptions> consumer) {
+        QBulkOptions options = new QBulkOptions();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        QBulkReport report = new QBulkReport();
+        Set<String> guardSet = new HashSet<>();
+        long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+        List<T> list = new ArrayList<>();
         try {
-            engine.writeBatch(batch -> newLocalTList.forEach(t1 -> batch.put(Codec.encodeKey(t1.objectId()), Codec.encode(t1))));
-        } catch (Exception e) {
-            indexer.removeIndexList(newLocalTList);
-            indexer.setIndexes(oldLocalTList);
-            throw new QIOException(e);
+            for (T t : iterable) {
+                list.add(t);
+                if (list.size() >= options.batchSize) {
+                    bulkWrite(list, options, report, guardSet, range);
+                }
+            }
+            bulkWrite(list, options, report, guardSet, range);
+        } finally {
+            //The batches written before a failure are indexed too.
+            if (options.deferIndexes && range[0] <= range[1]) {
+                QIndexTask<T> task = new QIndexTask<>(engine, indexer, clazz, prefix, null, false).range(range[0], range[1]);
+                task.run();
+                task.await();
+            }
         }
+        return report;
+    }
+
+
+    @Override
+    public BulkReport bulkSave(Iterable<T> iterable) {
+        return bulkSave(iterable, null);
+    }
+
+
+    @Override
+    public long update(T t, Predicate<T> predicate) {
+        return update(t, predicate, null);
+    }
+
+
+    //Documents are written a batch at a time as the scan finds them, so only one batch per partition is held.
+    @Override
+    public long update(T t, Predicate<T> predicate, Consumer<BatchOptions> consumer) {
+        QBatchOptions options = new QBatchOptions();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        Consumer<T> updater = updater(t);
+        List<T> list = scan(predicate, ArrayList::new, (list1, localT) -> {
+            updater.accept(localT);
+            list1.add(localT);
+            if (list1.size() >= options.batchSize) {
+                write(list1, options);
+            }
+        }, QCollection::merge);
+        write(list, options);
+        return options.affected();
     }
 
 
@@ -108,59 +182,130 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
     public void updateWithIndex(T t, Consumer<FindOptions> consumer) {
         T localT = findWithIndex(consumer);
         if (localT != null) {
-            ReflectObject<T> object = new ReflectObject<>(localT);
-            ReflectObject<T> tObject = new ReflectObject<>(t);
-            tObject.traverseFields((name, value) -> Optional.ofNullable(value).ifPresent(v -> object.setValue(name, v)));
-            save(object.get());
+            updater(t).accept(localT);
+            save(localT);
+        }
+    }
+
+
+    //A version that no longer matches is turned down before the write lock is taken, and checked again under it.
+    //A new document is expected at version 0.
+    @Override
+    public boolean saveIfVersion(T t, long version) {
+        checkVersioned();
+        boolean generated = t.objectId() == 0 || Plugin.getDigit(t.objectId()) < 18;
+        if (generated) {
+            if (version != 0) {
+                return false;
+            }
+            t._id = Plugin.generateId();
+            t.createdAt = Plugin.toTimestamp(t.objectId());
         }
+        byte[] key = Codec.encodeKey(prefix, t.objectId());
+        if (!generated && version(engine.get(key)) != version) {
+            return false;
+        }
+        return compareAndSet(key, version, value -> t);
+    }
+
+
+    //The non-null fields of the given document are copied onto the stored one, if it is still at the version.
+    @Override
+    public boolean update(long id, long version, T t) {
+        checkVersioned();
+        byte[] key = Codec.encodeKey(prefix, id);
+        byte[] value1 = engine.get(key);
+        if (value1 == null || version(value1) != version) {
+            return false;
+        }
+        Consumer<T> updater = updater(t);
+        return compareAndSet(key, version, value -> {
+            if (value == null) {
+                return null;
+            }
+            T localT = Codec.decode(value, clazz);
+            updater.accept(localT);
+            return localT;
+        });
     }
 
 
     @Override
     public void delete(long id) {
-        engine.delete(Codec.encodeKey(id));
-        indexer.removeIndex(id);
+        writeBatch(batch -> {
+            byte[] key = Codec.encodeKey(prefix, id);
+            counter.remove(engine.get(key));
+            batch.delete(key);
+            indexer.removeIndex(batch, id);
+        });
     }
 
 
     @Override
     public void delete(long... ids) {
-        engine.writeBatch(batch -> {
+        writeBatch(batch -> {
+            Set<Long> deletedIds = new HashSet<>();
             for (long id : ids) {
-                batch.delete(Codec.encodeKey(id));
+                byte[] key = Codec.encodeKey(prefix, id);
+                if (deletedIds.add(id)) {
+                    counter.remove(engine.get(key));
+                }
+                batch.delete(key);
             }
+            indexer.removeIndexes(batch, ids);
         });
-        indexer.removeIndexes(ids);
     }
 
 
     @Override
     public void delete(List<Long> ids) {
-        engine.writeBatch(batch -> ids.forEach(id -> batch.delete(Codec.encodeKey(id))));
-        indexer.removeIndexes(ids);
+        writeBatch(deleter(ids));
     }
 
 
     @Override
-    public void delete(Predicate<T> predicate) {
-        List<Long> ids = new ArrayList<>();
-        engine.writeBatch(batch -> engine.iteration((key, value) -> {
-            T t = Codec.decode(value, clazz);
-            if (t != null) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
-                }
-                batch.delete(key);
-                ids.add(t.objectId());
+    public CompletableFuture<Void> deleteAsync(long id) {
+        return submit(deleter(Collections.singletonList(id)));
+    }
+
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(List<Long> ids) {
+        return submit(deleter(new ArrayList<>(ids)));
+    }
+
+
+    @Override
+    public long delete(Predicate<T> predicate) {
+        return delete(predicate, null);
+    }
+
+
+    //Ids are deleted a batch at a time as the scan finds them, and without a predicate only the ids are decoded.
+    @Override
+    public long delete(Predicate<T> predicate, Consumer<BatchOptions> consumer) {
+        QBatchOptions options = new QBatchOptions();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        String[] projection = (predicate == null) ? new String[]{"_id"} : null;
+        List<Long> ids = scan(prefix, Codec.nextPrefix(prefix), predicate, projection, ArrayList::new, (list, t) -> {
+            list.add(t.objectId());
+            if (list.size() >= options.batchSize) {
+                remove(list, options);
             }
-        }));
-        indexer.removeIndexes(ids);
+        }, QCollection::merge);
+        remove(ids, options);
+        return options.affected();
     }
 
 
+    //The documents and index entries go by key range, without reading a single document.
     @Override
     public void deleteAll() {
-        delete((Predicate<T>) null);
+        counter.clear(() -> {
+            engine.deleteRange(prefix, Codec.nextPrefix(prefix));
+            indexer.clear();
+        });
+        cache.clear();
     }
 
 
@@ -179,19 +324,12 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
 
     @Override
     public List<T> find(Predicate<T> predicate, Consumer<FindOptions> consumer) {
-        QFindOptions options = (consumer != null) ? new QFindOptions() : null;
+        QFindOptions options = new QFindOptions();
         Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
-        List<T> list = new ArrayList<>();
-        engine.iteration((key, value) -> {
-            T t = Codec.decode(value, clazz);
-            if (t != null) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
-                }
-                list.add(t);
-            }
-        });
-        return (consumer != null) ? options.get(list) : list;
+        if (walksOrderedIndex(options)) {
+            return findWithOrderedIndex(options, predicate);
+        }
+        return find(prefix, Codec.nextPrefix(prefix), predicate, options);
     }
 
 
@@ -204,12 +342,7 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
     @Override
     public List<T> find(List<Long> ids) {
         List<T> list = new ArrayList<>();
-        ids.forEach(id -> {
-            byte[] key = Codec.encodeKey(id);
-            byte[] value = engine.get(key);
-            T t = (value != null) ? Codec.decode(value, clazz) : null;
-            Optional.ofNullable(t).ifPresent(list::add);
-        });
+        ids.forEach(id -> Optional.ofNullable(read(id)).ifPresent(list::add));
         return list;
     }
 
@@ -218,10 +351,7 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
     public List<T> find(long... ids) {
         List<T> list = new ArrayList<>();
         for (long id : ids) {
-            byte[] key = Codec.encodeKey(id);
-            byte[] value = engine.get(key);
-            T t = (value != null) ? Codec.decode(value, clazz) : null;
-            Optional.ofNullable(t).ifPresent(list::add);
+            Optional.ofNullable(read(id)).ifPresent(list::add);
         }
         return list;
     }
@@ -232,10 +362,10 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
         QFindOptions options = (consumer != null) ? new QFindOptions() : null;
         Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
         List<T> list = new ArrayList<>();
-        engine.iteration((key, value) -> {
+        engine.iteration(prefix, (key, value) -> {
             long id = Codec.decodeKey(key);
             if (predicate.test(id)) {
-                T t = Codec.decode(value, clazz);
+                T t = Codec.decode(value, clazz, (options != null) ? options.projection() : null);
                 Optional.ofNullable(t).ifPresent(list::add);
             }
         });
@@ -261,20 +391,38 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
     }
 
 
+    @Override
+    public List<T> findWithID(long fromId, long toId, Consumer<FindOptions> consumer) {
+        QFindOptions options = new QFindOptions();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        return find(fromId, toId, null, options);
+    }
+
+
+    @Override
+    public List<T> findWithID(long fromId, long toId) {
+        return findWithID(fromId, toId, null);
+    }
+
+
+    @Override
+    public List<T> findWithTime(long fromTime, long toTime, Consumer<FindOptions> consumer) {
+        return findWithID(Plugin.toMinId(fromTime), Plugin.toMaxId(toTime), consumer);
+    }
+
+
+    @Override
+    public List<T> findWithTime(long fromTime, long toTime) {
+        return findWithTime(fromTime, toTime, null);
+    }
+
+
     @Override
     public T findFirst(Predicate<T> predicate) {
-        AtomicReference<T> minT = new AtomicReference<>();
-        engine.iteration((key, value) -> {
-            long id = Codec.decodeKey(key);
+        return engine.iteration(prefix, (key, value) -> {
             T t = Codec.decode(value, clazz);
-            if (t != null && (minT.get() == null || id < minT.get().objectId())) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
-                }
-                minT.set(t);
-            }
+            return (t != null && (predicate == null || predicate.test(t))) ? t : null;
         });
-        return minT.get();
     }
 
 
@@ -286,18 +434,10 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
 
     @Override
     public T findLast(Predicate<T> predicate) {
-        AtomicReference<T> maxT = new AtomicReference<>();
-        engine.iteration((key, value) -> {
-            long id = Codec.decodeKey(key);
+        return engine.reverseIteration(prefix, Codec.nextPrefix(prefix), (key, value) -> {
             T t = Codec.decode(value, clazz);
-            if (t != null && (maxT.get() == null || id > maxT.get().objectId())) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
-                }
-                maxT.set(t);
-            }
+            return (t != null && (predicate == null || predicate.test(t))) ? t : null;
         });
-        return maxT.get();
     }
 
 
@@ -309,27 +449,120 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
 
     @Override
     public T findOne(long id) {
-        byte[] key = Codec.encodeKey(id);
-        byte[] value = engine.get(key);
-        return (value != null) ? Codec.decode(value, clazz) : null;
+        return findOne(id, null);
     }
 
 
     @Override
     public T findOne(Predicate<T> predicate) {
-        return engine.iteration((key, value) -> {
+        return engine.iteration(prefix, (key, value) -> {
             T t = Codec.decode(value, clazz);
             return (t != null && predicate.test(t)) ? t : null;
         });
     }
 
 
+    @Override
+    public Cursor<T> cursor(Predicate<T> predicate, Consumer<FindOptions> consumer) {
+        QFindOptions options = new QFindOptions();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        if (walksOrderedIndex(options)) {
+            return new QCursor<>(findWithOrderedIndex(options, predicate));
+        }
+        return cursor(prefix, Codec.nextPrefix(prefix), predicate, options);
+    }
+
+
+    @Override
+    public Cursor<T> cursor(Predicate<T> predicate) {
+        return cursor(predicate, null);
+    }
+
+
+    @Override
+    public Stream<T> stream(Predicate<T> predicate, Consumer<FindOptions> consumer) {
+        Cursor<T> cursor = cursor(predicate, consumer);
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(cursor::close);
+    }
+
+
+    @Override
+    public Stream<T> stream(Predicate<T> predicate) {
+        return stream(predicate, null);
+    }
+
+
+    @Override
+    public List<T> findWithFilter(Filter filter, Consumer<FindOptions> consumer) {
+        return findWithFilter(filter, consumer, new QExplain());
+    }
+
+
+    @Override
+    public List<T> findWithFilter(Filter filter) {
+        return findWithFilter(filter, null);
+    }
+
+
+    @Override
+    public Explain explain(Filter filter, Consumer<FindOptions> consumer) {
+        QExplain explain = new QExplain();
+        findWithFilter(filter, consumer, explain);
+        return explain;
+    }
+
+
+    @Override
+    public Explain explain(Filter filter) {
+        return explain(filter, null);
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V> List<V> pluck(String fieldName) {
+        Field field = ReflectObject.getField(clazz, fieldName);
+        String[] fieldNames = new String[]{fieldName};
+        List<V> list = new ArrayList<>();
+        engine.iteration(prefix, (key, value) -> {
+            T t = Codec.decode(value, clazz, fieldNames);
+            if (t != null) {
+                try {
+                    list.add((V) field.get(t));
+                } catch (IllegalAccessException e) {
+                    throw new QIOException(e);
+                }
+            }
+        });
+        return list;
+    }
+
+
     @Override
     public T findWithIndex(Consumer<FindOptions> consumer) {
         QFindOptions options = new QFindOptions();
         consumer.accept(options);
-        long id = indexer.getIndexId(clazz, options.indexName, options.indexValue);
-        return findOne(id);
+        long id = (options.indexNames != null)
+                ? indexer.getIndexId(clazz, options.indexNames, options.indexValues)
+                : indexer.getIndexId(clazz, options.indexName, options.indexValue);
+        return findOne(id, options.projection());
+    }
+
+
+    @Override
+    public List<T> findAllWithIndex(Consumer<FindOptions> consumer) {
+        QFindOptions options = new QFindOptions();
+        consumer.accept(options);
+        if (options.rangeName != null) {
+            return findWithOrderedIndex(options, null);
+        }
+        List<Long> ids = (options.indexNames != null)
+                ? indexer.getIndexIds(clazz, options.indexNames, options.indexValues)
+                : indexer.getIndexIds(clazz, options.indexName, options.indexValue);
+        List<T> list = new ArrayList<>();
+        ids.forEach(id -> Optional.ofNullable(findOne(id, options.projection())).ifPresent(list::add));
+        return options.get(list);
     }
 
 
@@ -337,30 +570,39 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
     public boolean exist(Consumer<FindOptions> consumer) {
         QFindOptions options = new QFindOptions();
         consumer.accept(options);
-        return indexer.exist(clazz, options.indexName, options.indexValue);
+        return (options.indexNames != null)
+                ? indexer.getIndexId(clazz, options.indexNames, options.indexValues) != 0
+                : indexer.exist(clazz, options.indexName, options.indexValue);
     }
 
 
     @Override
     public void dropIndex(String fieldName) {
-        List<T> list = findAll();
-        indexer.dropIndex(list, fieldName);
+        indexer.dropIndex(clazz, fieldName);
+    }
+
+
+    @Override
+    public IndexTask createIndex(String fieldName) {
+        return buildIndex(fieldName, false);
+    }
+
+
+    @Override
+    public IndexTask rebuildIndex(String fieldName) {
+        return buildIndex(fieldName, true);
     }
 
 
     @Override
     public long count(Predicate<T> predicate) {
-        AtomicLong count = new AtomicLong(0);
-        engine.iteration((key, value) -> {
-            T t = Codec.decode(value, clazz);
-            if (t != null) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
-                }
-                count.incrementAndGet();
-            }
-        });
-        return count.get();
+        if (predicate == null && counter.counted()) {
+            return counter.count();
+        }
+        return scan(predicate, () -> new long[1], (a, t) -> a[0]++, (a1, a2) -> {
+            a1[0] += a2[0];
+            return a1;
+        })[0];
     }
 
 
@@ -372,17 +614,7 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
 
     @Override
     public BigDecimal sum(String fieldName, Predicate<T> predicate) {
-        AtomicReference<BigDecimal> reference = new AtomicReference<>(new BigDecimal(0));
-        engine.iteration((key, value) -> {
-            T t = Codec.decode(value, clazz);
-            if (t != null) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
-                }
-                reference.set(reference.get().add(new ReflectObject<>(t).getBigDecimalValue(fieldName)));
-            }
-        });
-        return reference.get();
+        return exactStats(fieldName, predicate).sum();
     }
 
 
@@ -394,23 +626,7 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
 
     @Override
     public Double average(String fieldName, Predicate<T> predicate) {
-        AtomicReference<BigDecimal> sum = new AtomicReference<>();
-        AtomicLong count = new AtomicLong(0);
-        engine.iteration((key, value) -> {
-            T t = Codec.decode(value, clazz);
-            if (t != null) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
-                }
-                if (sum.get() == null) {
-                    sum.set(new ReflectObject<>(t).getBigDecimalValue(fieldName));
-                } else {
-                    sum.set(sum.get().add(new ReflectObject<>(t).getBigDecimalValue(fieldName)));
-                }
-                count.incrementAndGet();
-            }
-        });
-        return sum.get().doubleValue() / count.get();
+        return exactStats(fieldName, predicate).average();
     }
 
 
@@ -422,24 +638,7 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
 
     @Override
     public BigDecimal max(String fieldName, Predicate<T> predicate) {
-        AtomicReference<BigDecimal> reference = new AtomicReference<>();
-        engine.iteration((key, value) -> {
-            T t = Codec.decode(value, clazz);
-            if (t != null) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
-                }
-                BigDecimal bigDecimal = new ReflectObject<>(t).getBigDecimalValue(fieldName);
-                if (reference.get() == null) {
-                    reference.set(bigDecimal);
-                } else {
-                    if (bigDecimal != null && bigDecimal.compareTo(reference.get()) > 0) {
-                        reference.set(bigDecimal);
-                    }
-                }
-            }
-        });
-        return reference.get();
+        return exactStats(fieldName, predicate).max();
     }
 
 
@@ -451,30 +650,646 @@ final class QCollection<T extends IOEntity> implements Collection<T> {
 
     @Override
     public BigDecimal min(String fieldName, Predicate<T> predicate) {
-        AtomicReference<BigDecimal> reference = new AtomicReference<>();
-        engine.iteration((key, value) -> {
-            T t = Codec.decode(value, clazz);
-            if (t != null) {
-                if (predicate != null && !predicate.test(t)) {
-                    return;
+        return exactStats(fieldName, predicate).min();
+    }
+
+
+    @Override
+    public BigDecimal min(String fieldName) {
+        return min(fieldName, null);
+    }
+
+
+    @Override
+    public Stats stats(String fieldName, Predicate<T> predicate) {
+        return aggregate(predicate, false, fieldName)[0];
+    }
+
+
+    @Override
+    public Stats stats(String fieldName) {
+        return stats(fieldName, null);
+    }
+
+
+    @Override
+    public Map<String, Stats> stats(Predicate<T> predicate, String... fieldNames) {
+        return stats(predicate, false, fieldNames);
+    }
+
+
+    @Override
+    public Map<String, Stats> exactStats(Predicate<T> predicate, String... fieldNames) {
+        return stats(predicate, true, fieldNames);
+    }
+
+
+    @Override
+    public <K> Map<K, Group> groupBy(Function<T, K> keyFunction, Predicate<T> predicate, String... fieldNames) {
+        return groupBy(keyFunction, predicate, null, fieldNames);
+    }
+
+
+    @Override
+    public <K> Map<K, Group> groupBy(Function<T, K> keyFunction, String... fieldNames) {
+        return groupBy(keyFunction, null, fieldNames);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <K> Map<K, Group> groupBy(String keyFieldName, Predicate<T> predicate, String... fieldNames) {
+        Field field = ReflectObject.getField(clazz, keyFieldName);
+        Set<String> projection = new LinkedHashSet<>(Arrays.asList(fieldNames));
+        projection.add(keyFieldName);
+        return groupBy(t -> {
+            try {
+                return (K) field.get(t);
+            } catch (IllegalAccessException e) {
+                throw new QIOException(e);
+            }
+        }, predicate, (predicate == null) ? projection.toArray(new String[0]) : null, fieldNames);
+    }
+
+
+    @Override
+    public <K> Map<K, Group> groupBy(String keyFieldName, String... fieldNames) {
+        return groupBy(keyFieldName, null, fieldNames);
+    }
+
+
+    @Override
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+
+    private List<T> toList(Cursor<T> cursor) {
+        List<T> list = new ArrayList<>();
+        try (Cursor<T> c = cursor) {
+            c.forEachRemaining(list::add);
+        }
+        return list;
+    }
+
+
+    //Without sorting, skip and limit are applied while iterating, so only the returned documents are decoded.
+    //With sorting, every match has to be seen first, and a limit keeps only the best candidates in memory.
+    //A cursor always reads through a single iterator, so that it holds one document at a time.
+    private Cursor<T> cursor(byte[] start, byte[] end, Predicate<T> predicate, QFindOptions options) {
+        if (options.sortValue != 0) {
+            try (Cursor<T> cursor = new QCursor<>(engine.iterator(), start, end, clazz, predicate, options.projection(), 0, 0)) {
+                return new QCursor<>(options.get(cursor));
+            }
+        }
+        return new QCursor<>(engine.iterator(), start, end, clazz, predicate, options.projection(), options.skipSize, options.limitSize);
+    }
+
+
+    //A list holds every match anyway, so it is scanned in parallel when configured, unless a limit without sorting
+    //lets a single iterator stop early.
+    private List<T> find(byte[] start, byte[] end, Predicate<T> predicate, QFindOptions options) {
+        if (scanner.isParallel() && (options.sortValue != 0 || options.limitSize <= 0)) {
+            QFindOptions candidates = options.candidates();
+            Consumer<List<T>> trim = list -> {
+                if (candidates != null && list.size() >= 2 * candidates.limitSize) {
+                    List<T> top = candidates.get(list);
+                    list.clear();
+                    list.addAll(top);
+                }
+            };
+            List<T> list = scan(start, end, predicate, options.projection(), ArrayList::new, (l, t) -> {
+                l.add(t);
+                trim.accept(l);
+            }, (l1, l2) -> {
+                l1.addAll(l2);
+                trim.accept(l1);
+                return l1;
+            });
+            return options.get(list);
+        }
+        return toList(cursor(start, end, predicate, options));
+    }
+
+
+    //Copies the non-null fields of t onto the documents it updates, the fields are read from t once.
+    private Consumer<T> updater(T t) {
+        List<Field> fields = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        try {
+            for (Class<?> c = t.getClass(); c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || !field.getDeclaringClass().isAssignableFrom(clazz)
+                            || "_id".equals(field.getName()) || "createdAt".equals(field.getName())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    Object value = field.get(t);
+                    if (value != null) {
+                        fields.add(field);
+                        values.add(value);
+                    }
                 }
-                BigDecimal bigDecimal = new ReflectObject<>(t).getBigDecimalValue(fieldName);
-                if (reference.get() == null) {
-                    reference.set(bigDecimal);
+            }
+        } catch (IllegalAccessException e) {
+            throw new QIOException(e);
+        }
+        return localT -> {
+            try {
+                for (int i = 0; i < fields.size(); i++) {
+                    fields.get(i).set(localT, values.get(i));
+                }
+            } catch (IllegalAccessException e) {
+                throw new QIOException(e);
+            }
+        };
+    }
+
+
+    //Documents without ids get a block of new ids, so there is nothing stored to replace or subtract. They are encoded
+    //in parallel, and the entries of the batch are written in key order. Documents with ids are saved as usual.
+    //With deferred indexes, the unique values of the whole load are still checked, through the guard set, and the
+    //range grows to the new ids for the entries to be built over them at the end.
+    private void bulkWrite(List<T> list, QBulkOptions options, QBulkReport report, Set<String> guardSet, long[] range) {
+        List<T> newList = new ArrayList<>();
+        List<T> oldList = new ArrayList<>();
+        list.forEach(t -> ((t.objectId() == 0 || Plugin.getDigit(t.objectId()) < 18) ? newList : oldList).add(t));
+        long[] ids = Plugin.generateIds(newList.size());
+        if (ids.length > 0) {
+            range[0] = Math.min(range[0], ids[0]);
+            range[1] = Math.max(range[1], ids[ids.length - 1]);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            newList.get(i)._id = ids[i];
+            newList.get(i).createdAt = Plugin.toTimestamp(ids[i]);
+            setVersion(newList.get(i), 1);
+        }
+        QBatchOptions batchOptions = new QBatchOptions();
+        batchOptions.batchSize = options.batchSize;
+        write(oldList, batchOptions);
+        List<byte[]> values = scanner.map(newList, Codec::encode);
+        List<byte[][]> entries = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            entries.add(new byte[][]{Codec.encodeKey(prefix, ids[i]), values.get(i)});
+        }
+        try {
+            writeBatch(batch -> {
+                if (options.deferIndexes) {
+                    indexer.addIndexes(newList, new ArrayList<>(), guardSet);
                 } else {
-                    if (bigDecimal != null && bigDecimal.compareTo(reference.get()) < 0) {
-                        reference.set(bigDecimal);
+                    indexer.addIndexes(newList, entries, new HashSet<>());
+                }
+                newList.forEach(counter::add);
+                entries.sort((entry1, entry2) -> Codec.compare(entry1[0], entry2[0]));
+                entries.forEach(entry -> batch.put(entry[0], entry[1]));
+            });
+        } catch (DBException e) {
+            throw new QIOException(e);
+        }
+        report.add(list.size());
+        if (options.progress != null && !list.isEmpty()) {
+            options.progress.accept(report);
+        }
+        list.clear();
+    }
+
+
+    //Writes the documents with their index entries, at most a batch size at a time, and empties the list.
+    private void write(List<T> list, QBatchOptions options) {
+        for (int i = 0; i < list.size(); i += options.batchSize) {
+            List<T> chunk = list.subList(i, Math.min(i + options.batchSize, list.size()));
+            try {
+                writeBatch(batch -> {
+                    indexer.setIndexes(batch, chunk);
+                    replace(chunk, Collections.emptySet());
+                    chunk.forEach(t -> batch.put(Codec.encodeKey(prefix, t.objectId()), Codec.encode(t)));
+                });
+            } catch (DBException e) {
+                throw new QIOException(e);
+            }
+            options.written(chunk.size());
+        }
+        list.clear();
+    }
+
+
+    //Deletes the documents with their index entries, at most a batch size at a time, and empties the list.
+    private void remove(List<Long> ids, QBatchOptions options) {
+        for (int i = 0; i < ids.size(); i += options.batchSize) {
+            List<Long> chunk = ids.subList(i, Math.min(i + options.batchSize, ids.size()));
+            writeBatch(batch -> chunk.forEach(id -> {
+                byte[] key = Codec.encodeKey(prefix, id);
+                counter.remove(engine.get(key));
+                batch.delete(key);
+                indexer.removeIndex(batch, id);
+            }));
+            options.written(chunk.size());
+        }
+        ids.clear();
+    }
+
+
+    //New documents get their ids on the calling thread, so that they are known as soon as an asynchronous save returns.
+    private Consumer<WriteBatch> saver(T t) {
+        boolean generated = t.objectId() == 0 || Plugin.getDigit(t.objectId()) < 18;
+        if (generated) {
+            t._id = Plugin.generateId();
+            t.createdAt = Plugin.toTimestamp(t.objectId());
+        }
+        return batch -> put(batch, t, generated ? null : engine.get(Codec.encodeKey(prefix, t.objectId())));
+    }
+
+
+    //Replaces the stored document, null when there is none, together with its index entries and running values.
+    private void put(WriteBatch batch, T t, byte[] value) {
+        indexer.setIndex(batch, t);
+        counter.remove(value);
+        counter.add(t);
+        setVersion(t, version(value) + 1);
+        batch.put(Codec.encodeKey(prefix, t.objectId()), Codec.encode(t));
+    }
+
+
+    private Consumer<WriteBatch> saver(List<T> list) {
+        Set<Long> generatedIds = new HashSet<>();
+        list.forEach(t -> {
+            if (t.objectId() == 0 || Plugin.getDigit(t.objectId()) < 18) {
+                t._id = Plugin.generateId();
+                t.createdAt = Plugin.toTimestamp(t.objectId());
+                generatedIds.add(t.objectId());
+            }
+        });
+        return batch -> {
+            indexer.setIndexes(batch, list);
+            replace(list, generatedIds);
+            list.forEach(t -> batch.put(Codec.encodeKey(prefix, t.objectId()), Codec.encode(t)));
+        };
+    }
+
+
+    private Consumer<WriteBatch> deleter(List<Long> ids) {
+        return batch -> {
+            new HashSet<>(ids).forEach(id -> counter.remove(engine.get(Codec.encodeKey(prefix, id))));
+            ids.forEach(id -> batch.delete(Codec.encodeKey(prefix, id)));
+            indexer.removeIndexes(batch, ids);
+        };
+    }
+
+
+    //The last write of each id in a transaction, a null document being a deletion. Deletions go first,
+    //so that a document may take over the unique values of one deleted in the same transaction.
+    Consumer<WriteBatch> writer(Map<Long, IOEntity> map) {
+        List<T> list = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        map.forEach((id, t) -> {
+            if (t != null) {
+                list.add(clazz.cast(t));
+            } else {
+                ids.add(id);
+            }
+        });
+        Consumer<WriteBatch> saver = saver(list);
+        Consumer<WriteBatch> deleter = deleter(ids);
+        return deleter.andThen(saver);
+    }
+
+
+    Committer.Party party() {
+        return counter;
+    }
+
+
+    byte[] key(long id) {
+        return Codec.encodeKey(prefix, id);
+    }
+
+
+    void invalidate(Set<Long> ids) {
+        cache.invalidate(ids);
+    }
+
+
+    //Documents are written together with the running values of their collection, and leave the cache once written.
+    private void writeBatch(Consumer<WriteBatch> consumer) {
+        Set<Long> ids = new HashSet<>();
+        try {
+            counter.writeBatch(cache.track(consumer, ids));
+        } finally {
+            cache.invalidate(ids);
+        }
+    }
+
+
+    //The future completes after the documents have left the cache. The collections of a snapshot have no writer.
+    private CompletableFuture<Void> submit(Consumer<WriteBatch> consumer) {
+        if (committer == null) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new QIOException(Constants.SNAPSHOT_READ_ONLY));
+            return future;
+        }
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        return committer.submit(counter, cache.track(consumer, ids)).whenComplete((v, e) -> cache.invalidate(ids));
+    }
+
+
+    //Documents read by id go through the cache, when there is one.
+    private T read(long id) {
+        if (cache.enabled()) {
+            return cache.get(id, engine);
+        }
+        byte[] value = engine.get(Codec.encodeKey(prefix, id));
+        return (value != null) ? Codec.decode(value, clazz) : null;
+    }
+
+
+    //A document that appears more than once in a batch is counted and versioned by its last occurrence, the one that is stored.
+    private void replace(List<T> list, Set<Long> generatedIds) {
+        Set<Long> countedIds = new HashSet<>();
+        for (int i = list.size() - 1; i >= 0; i--) {
+            T t = list.get(i);
+            if (countedIds.add(t.objectId())) {
+                byte[] value = generatedIds.contains(t.objectId()) ? null : engine.get(Codec.encodeKey(prefix, t.objectId()));
+                counter.remove(value);
+                counter.add(t);
+                setVersion(t, version(value) + 1);
+            }
+        }
+    }
+
+
+    //Writes the document the function makes of the stored one, unless the version moved on or the function gives null.
+    private boolean compareAndSet(byte[] key, long version, Function<byte[], T> function) {
+        boolean[] saved = new boolean[1];
+        try {
+            writeBatch(batch -> {
+                byte[] value = engine.get(key);
+                T t = (version(value) == version) ? function.apply(value) : null;
+                if (t != null) {
+                    put(batch, t, value);
+                    saved[0] = true;
+                }
+            });
+        } catch (DBException e) {
+            throw new QIOException(e);
+        }
+        return saved[0];
+    }
+
+
+    private void checkVersioned() {
+        if (versionField == null) {
+            throw new QIOException(Constants.NO_VERSION_FIELD);
+        }
+    }
+
+
+    //The version of a stored document, 0 when there is none or the class has no version field.
+    private long version(byte[] value) {
+        if (value == null || versionField == null) {
+            return 0;
+        }
+        try {
+            Object version = versionField.get(Codec.decode(value, clazz, new String[]{versionField.getName()}));
+            return (version != null) ? ((Number) version).longValue() : 0;
+        } catch (IllegalAccessException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    private void setVersion(T t, long version) {
+        if (versionField == null) {
+            return;
+        }
+        try {
+            boolean isInt = versionField.getType() == int.class || versionField.getType() == Integer.class;
+            versionField.set(t, isInt ? (Object) (int) version : (Object) version);
+        } catch (IllegalAccessException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    private static Field versionField(Class<?> clazz) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Version.class)) {
+                    switch (field.getType().getSimpleName().toLowerCase()) {
+                        case "int":
+                        case "integer":
+                        case "long": break;
+                        default: throw new QIOException(Constants.VERSION_FIELD_NOT_INTEGRAL);
                     }
+                    field.setAccessible(true);
+                    return field;
                 }
             }
+        }
+        return null;
+    }
+
+
+    private <A> A scan(Predicate<T> predicate, Supplier<A> supplier, BiConsumer<A, T> accumulator, BinaryOperator<A> combiner) {
+        return scan(prefix, Codec.nextPrefix(prefix), predicate, null, supplier, accumulator, combiner);
+    }
+
+
+    //Decodes the documents between start and end, and folds the ones that match, in parallel when configured.
+    private <A> A scan(byte[] start, byte[] end, Predicate<T> predicate, String[] fieldNames,
+                       Supplier<A> supplier, BiConsumer<A, T> accumulator, BinaryOperator<A> combiner) {
+        return scanner.scan(start, end, supplier, (a, value) -> {
+            T t = Codec.decode(value, clazz, fieldNames);
+            if (t != null && (predicate == null || predicate.test(t))) {
+                accumulator.accept(a, t);
+            }
+        }, combiner);
+    }
+
+
+    private static <E, L extends List<E>> L merge(L list1, L list2) {
+        list1.addAll(list2);
+        return list1;
+    }
+
+
+    //Without a predicate, the fields with running values are read from the counter.
+    private Stats exactStats(String fieldName, Predicate<T> predicate) {
+        if (predicate == null && counter.contains(fieldName)) {
+            return counter.stats(fieldName, () -> aggregate(null, true, fieldName)[0]);
+        }
+        return aggregate(predicate, true, fieldName)[0];
+    }
+
+
+    private Map<String, Stats> stats(Predicate<T> predicate, boolean exact, String... fieldNames) {
+        String[] names = new LinkedHashSet<>(Arrays.asList(fieldNames)).toArray(new String[0]);
+        QStats[] stats = aggregate(predicate, exact, names);
+        Map<String, Stats> map = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            map.put(names[i], stats[i]);
+        }
+        return map;
+    }
+
+
+    private <K> Map<K, Group> groupBy(Function<T, K> keyFunction, Predicate<T> predicate, String[] projection, String... fieldNames) {
+        String[] names = new LinkedHashSet<>(Arrays.asList(fieldNames)).toArray(new String[0]);
+        Aggregator<T> aggregator = new Aggregator<>(clazz, names, false);
+        Map<K, QGroup> groups = this.<Map<K, QGroup>>scan(prefix, Codec.nextPrefix(prefix), predicate, projection, HashMap::new,
+                (map, t) -> aggregator.accumulate(map, keyFunction.apply(t), t), Aggregator::combine);
+        return Collections.unmodifiableMap(groups);
+    }
+
+
+    //All the fields are aggregated in one scan. Without a predicate, only these fields are decoded.
+    private QStats[] aggregate(Predicate<T> predicate, boolean exact, String... fieldNames) {
+        Aggregator<T> aggregator = new Aggregator<>(clazz, fieldNames, exact);
+        String[] projection = (predicate == null && fieldNames.length > 0) ? fieldNames : null;
+        return scan(prefix, Codec.nextPrefix(prefix), predicate, projection, aggregator::supply, aggregator::accumulate, Aggregator::combine);
+    }
+
+
+    private List<T> find(long fromId, long toId, Predicate<T> predicate, QFindOptions options) {
+        if (fromId > toId || toId < 0) {
+            return new ArrayList<>();
+        }
+        byte[] start = Codec.encodeKey(prefix, Math.max(fromId, 0));
+        byte[] end = (toId == Long.MAX_VALUE) ? Codec.nextPrefix(prefix) : Codec.encodeKey(prefix, toId + 1);
+        return find(start, end, predicate, options);
+    }
+
+
+    //The plan only narrows down the documents to examine, the whole filter is tested on each of them.
+    private List<T> findWithFilter(Filter filter, Consumer<FindOptions> consumer, QExplain explain) {
+        Optional.ofNullable(filter).orElseThrow(NullPointerException::new);
+        QFindOptions options = new QFindOptions();
+        Optional.ofNullable(consumer).ifPresent(c -> c.accept(options));
+        Set<String> fieldNames = new HashSet<>();
+        filter.collectFieldNames(fieldNames);
+        options.require(fieldNames);
+        Planner.Plan plan = Planner.plan(clazz, filter);
+        Predicate<T> predicate = t -> {
+            explain.examined.incrementAndGet();
+            return filter.test(t);
+        };
+        List<T> list;
+        switch (plan.type) {
+            case FULL_SCAN:
+                list = find(prefix, Codec.nextPrefix(prefix), predicate, options);
+                break;
+            case ID_RANGE:
+                list = find(plan.fromId, plan.toId, predicate, options);
+                break;
+            default:
+                list = find(findIds(plan), predicate, options);
+        }
+        explain.plan = plan;
+        explain.returned = list.size();
+        return list;
+    }
+
+
+    private Set<Long> findIds(Planner.Plan plan) {
+        Set<Long> ids = new LinkedHashSet<>();
+        switch (plan.type) {
+            case ID_LOOKUP:
+                Arrays.stream(plan.values).forEach(value -> ids.add(((Number) value).longValue()));
+                break;
+            case UNIQUE_INDEX_LOOKUP:
+            case INDEX_LOOKUP:
+                Arrays.stream(plan.values).forEach(value -> ids.addAll(indexer.getIndexIds(clazz, plan.fieldName, value)));
+                break;
+            case ID_RANGE:
+                if (plan.fromId <= plan.toId && plan.toId >= 0) {
+                    byte[] start = Codec.encodeKey(prefix, Math.max(plan.fromId, 0));
+                    byte[] end = (plan.toId == Long.MAX_VALUE) ? Codec.nextPrefix(prefix) : Codec.encodeKey(prefix, plan.toId + 1);
+                    engine.iteration(start, end, (key, value) -> {
+                        ids.add(Codec.decodeKey(key));
+                    });
+                }
+                break;
+            case INDEX_RANGE:
+                indexer.traverseOrdered(clazz, plan.fieldName, plan.lowerValue, plan.lowerInclusive,
+                        plan.upperValue, plan.upperInclusive, false, id -> {
+                    ids.add(id);
+                    return true;
+                });
+                break;
+            case INDEX_UNION:
+                plan.plans.forEach(p -> ids.addAll(findIds(p)));
+                break;
+        }
+        return ids;
+    }
+
+
+    //Without sorting, the ids come in the order of the plan, so a limit stops the lookups early.
+    private List<T> find(Set<Long> ids, Predicate<T> predicate, QFindOptions options) {
+        long wantedSize = (options.sortValue == 0 && options.limitSize > 0) ? Math.max(options.skipSize, 0) + options.limitSize : 0;
+        String[] fieldNames = options.projection();
+        List<T> list = new ArrayList<>();
+        for (long id : ids) {
+            T t = findOne(id, fieldNames);
+            if (t != null && predicate.test(t)) {
+                list.add(t);
+                if (wantedSize > 0 && list.size() >= wantedSize) {
+                    break;
+                }
+            }
+        }
+        return options.get(list);
+    }
+
+
+    //Only a range bound walks an ordered index. A document without a value, or stored before the index was built,
+    //has no entry in it, so sorting alone scans the documents to return every one of them.
+    private boolean walksOrderedIndex(QFindOptions options) {
+        return options.rangeName != null;
+    }
+
+
+    //Walks an ordered index between the range bounds. When the output is wanted in the order of the index,
+    //documents come out already sorted, and the walk stops as soon as the limit is reached.
+    //The documents are gathered into a list, so a cursor over an index range holds all of them at once.
+    private List<T> findWithOrderedIndex(QFindOptions options, Predicate<T> predicate) {
+        String fieldName = (options.rangeName != null) ? options.rangeName : options.sortFieldName;
+        boolean indexOrder = options.sortValue == 0 || fieldName.equals(options.sortFieldName);
+        AtomicLong skipSize = new AtomicLong(indexOrder ? options.skipSize : 0);
+        long limitSize = indexOrder ? options.limitSize : 0;
+        List<T> list = new ArrayList<>();
+        indexer.traverseOrdered(clazz, fieldName, options.lowerValue, options.lowerInclusive,
+                options.upperValue, options.upperInclusive, indexOrder && options.sortValue == -1, id -> {
+            T t = findOne(id, options.projection());
+            if (t == null || (predicate != null && !predicate.test(t))) {
+                return true;
+            }
+            if (skipSize.getAndDecrement() > 0) {
+                return true;
+            }
+            list.add(t);
+            return limitSize <= 0 || list.size() < limitSize;
         });
-        return reference.get();
+        return indexOrder ? list : options.get(list);
     }
 
 
-    @Override
-    public BigDecimal min(String fieldName) {
-        return min(fieldName, null);
+    private T findOne(long id, String[] fieldNames) {
+        if (fieldNames == null) {
+            return read(id);
+        }
+        byte[] key = Codec.encodeKey(prefix, id);
+        byte[] value = engine.get(key);
+        return (value != null) ? Codec.decode(value, clazz, fieldNames) : null;
+    }
+
+
+    private IndexTask buildIndex(String fieldName, boolean rebuild) {
+        if (!indexer.isIndexed(clazz, fieldName)) {
+            throw new QIOException(Constants.NON_INDEXED_FIELD);
+        }
+        QIndexTask<T> task = new QIndexTask<>(engine, indexer, clazz, prefix, fieldName, rebuild);
+        scanner.execute(task);
+        return task;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.Cursor;
+import com.github.artbits.quickio.exception.QIOException;
+import org.iq80.leveldb.api.DBIterator;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+final class QCursor<T extends IOEntity> implements Cursor<T> {
+
+    private final DBIterator iterator;
+    private final Iterator<T> listIterator;
+    private final byte[] end;
+    private final Class<T> clazz;
+    private final Predicate<T> predicate;
+    private final String[] fieldNames;
+    private final long limitSize;
+    private long skipSize;
+    private long count;
+    private T next;
+    private boolean closed;
+
+
+    QCursor(DBIterator iterator, byte[] start, byte[] end, Class<T> clazz, Predicate<T> predicate, String[] fieldNames,
+            long skipSize, long limitSize) {
+        this.iterator = iterator;
+        this.listIterator = null;
+        this.end = end;
+        this.clazz = clazz;
+        this.predicate = predicate;
+        this.fieldNames = fieldNames;
+        this.skipSize = skipSize;
+        this.limitSize = limitSize;
+        iterator.seek(start);
+    }
+
+
+    QCursor(List<T> list) {
+        this.iterator = null;
+        this.listIterator = list.iterator();
+        this.end = null;
+        this.clazz = null;
+        this.predicate = null;
+        this.fieldNames = null;
+        this.limitSize = 0;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T t = next;
+        next = null;
+        return t;
+    }
+
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (iterator != null) {
+                iterator.close();
+            }
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    //Decode one document at a time, and release the iterator as soon as the limit is reached.
+    private T advance() {
+        if (listIterator != null) {
+            return listIterator.hasNext() ? listIterator.next() : null;
+        }
+        while ((limitSize <= 0 || count < limitSize) && iterator.hasNext()) {
+            Map.Entry<byte[], byte[]> entry = iterator.next();
+            if (Codec.compare(entry.getKey(), end) >= 0) {
+                break;
+            }
+            T t = Codec.decode(entry.getValue(), clazz, fieldNames);
+            if (t == null || (predicate != null && !predicate.test(t))) {
+                continue;
+            }
+            if (skipSize > 0) {
+                skipSize--;
+                continue;
+            }
+            count++;
+            return t;
+        }
+        close();
+        return null;
+    }
+
+}
@@ -18,15 +18,28 @@ package com.github.artbits.quickio.core;
 
 import com.github.artbits.quickio.api.Collection;
 import com.github.artbits.quickio.api.JDB;
+import com.github.artbits.quickio.api.Snapshot;
+import com.github.artbits.quickio.api.Transaction;
 
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static com.github.artbits.quickio.core.Constants.DB_PATH;
+import static com.github.artbits.quickio.core.Constants.INDEX;
 
 final class QDB implements JDB {
 
+    private final Config config;
     private final EngineIO engine;
-    private final Indexer indexer;
+    private final Catalog catalog;
+    private final Scanner scanner;
+    private final Committer committer;
+    private final Map<String, Indexer> indexers = new ConcurrentHashMap<>();
+    private final Map<String, Counter<?>> counters = new ConcurrentHashMap<>();
+    private final Map<String, EntityCache<?>> caches = new ConcurrentHashMap<>();
 
 
     QDB(Config config) {
@@ -35,8 +48,16 @@ final class QDB implements JDB {
         } else {
             config.path = Paths.get(config.path, DB_PATH).toAbsolutePath().toString();
         }
+        this.config = config;
         engine = new EngineLevel().open(config);
-        indexer = new Indexer(new EngineLevel(), config.path, config.name);
+        catalog = new Catalog(engine);
+        scanner = new Scanner(engine, config);
+        committer = new Committer(engine, config);
+        if (Files.exists(Paths.get(config.path, config.name, INDEX))) {
+            EngineIO legacy = new EngineLevel().open(Config.of(c -> c.name(INDEX).path(config.path + "/" + config.name)));
+            Indexer.migrate(engine, catalog, legacy);
+            legacy.destroy();
+        }
         Runtime.getRuntime().addShutdownHook(new Thread(this::close));
     }
 
@@ -48,21 +69,57 @@ final class QDB implements JDB {
 
     @Override
     public void close() {
+        scanner.close();
+        committer.close();
         engine.close();
-        indexer.close();
     }
 
 
     @Override
     public void destroy() {
+        scanner.close();
+        committer.close();
         engine.destroy();
-        indexer.destroy();
+    }
+
+
+    //Every collection of a class shares one indexer, so that index builds and writers see the same lock.
+    private Indexer indexer(Class<?> clazz) {
+        return indexers.computeIfAbsent(clazz.getSimpleName(), name -> new Indexer(engine, catalog.indexPrefix(name)));
+    }
+
+
+    //Likewise for the counter, whose writers take turns.
+    @SuppressWarnings("unchecked")
+    private <T extends IOEntity> Counter<T> counter(Class<T> clazz) {
+        return (Counter<T>) counters.computeIfAbsent(clazz.getSimpleName(),
+                name -> new Counter<>(engine, indexer(clazz), catalog.counterKey(clazz), clazz, catalog.prefix(clazz)));
+    }
+
+
+    //And for the cache, which every write of the class has to reach.
+    @SuppressWarnings("unchecked")
+    private <T extends IOEntity> EntityCache<T> cache(Class<T> clazz) {
+        return (EntityCache<T>) caches.computeIfAbsent(clazz.getSimpleName(),
+                name -> new EntityCache<>(clazz, catalog.prefix(clazz), config.entityCacheSize, config.entityCacheBytes));
     }
 
 
     @Override
     public <T extends IOEntity> Collection<T> collection(Class<T> clazz) {
-        return new QCollection<>(clazz, engine, indexer);
+        return new QCollection<>(clazz, engine, indexer(clazz), counter(clazz), cache(clazz), scanner, committer, catalog);
+    }
+
+
+    @Override
+    public Snapshot snapshot() {
+        return new QSnapshot(engine, catalog, config);
+    }
+
+
+    @Override
+    public void transaction(Consumer<Transaction> consumer) {
+        QTransaction.run(this, engine, committer, consumer);
     }
 
 }
\ No newline at end of file
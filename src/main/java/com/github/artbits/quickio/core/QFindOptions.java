@@ -19,21 +19,54 @@ package com.github.artbits.quickio.core;
 import com.github.artbits.quickio.api.FindOptions;
 import com.github.artbits.quickio.exception.QIOException;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 final class QFindOptions implements FindOptions {
 
-    private String sortFieldName;
-    private long sortValue;
-    private long skipSize;
-    private long limitSize;
+    private static class Candidate<T> {
+        final T t;
+        final Object key;
+        final long sequence;
 
+        Candidate(T t, Object key, long sequence) {
+            this.t = t;
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        //Ties keep their iteration order, the same as a stable sort.
+        static <T> Comparator<Candidate<T>> order(Comparator<Object> comparator) {
+            Comparator<Candidate<T>> c = (c1, c2) -> comparator.compare(c1.key, c2.key);
+            return c.thenComparingLong(candidate -> candidate.sequence);
+        }
+    }
+
+
+    String sortFieldName;
+    long sortValue;
+    long skipSize;
+    long limitSize;
     String indexName;
     Object indexValue;
+    String[] indexNames;
+    Object[] indexValues;
+    String rangeName;
+    Object lowerValue;
+    boolean lowerInclusive;
+    Object upperValue;
+    boolean upperInclusive;
+    String[] projectNames;
 
 
     @Override
@@ -71,16 +104,127 @@ final class QFindOptions implements FindOptions {
     }
 
 
+    @Override
+    public void index(String[] fieldNames, Object[] fieldValues) {
+        indexNames = Optional.ofNullable(fieldNames).orElseThrow(NullPointerException::new);
+        indexValues = Optional.ofNullable(fieldValues).orElseThrow(NullPointerException::new);
+        if (fieldNames.length == 0 || fieldNames.length != fieldValues.length) {
+            throw new QIOException(Constants.INDEX_VALUES_DO_NOT_MATCH_FIELDS);
+        }
+    }
+
+
+    @Override
+    public FindOptions project(String... fieldNames) {
+        if (fieldNames == null || fieldNames.length == 0) {
+            throw new QIOException(Constants.PROJECTION_FIELD_NAMES_ILLEGAL);
+        }
+        projectNames = fieldNames;
+        return this;
+    }
+
+
+    //A projection also has to decode the fields that a filter tests.
+    void require(Set<String> fieldNames) {
+        if (projectNames != null) {
+            Set<String> set = new LinkedHashSet<>(Arrays.asList(projectNames));
+            set.addAll(fieldNames);
+            projectNames = set.toArray(new String[0]);
+        }
+    }
+
+
+    //With sorting and a limit, the best skip + limit documents of each part of a scan are enough.
+    QFindOptions candidates() {
+        if (sortValue == 0 || limitSize <= 0) {
+            return null;
+        }
+        QFindOptions options = new QFindOptions();
+        options.sortFieldName = sortFieldName;
+        options.sortValue = sortValue;
+        options.limitSize = Math.min(Math.max(skipSize, 0) + limitSize, Integer.MAX_VALUE / 2);
+        return options;
+    }
+
+
+    //The fields to decode, the id and the sorting field are always among them. Null is to decode every field.
+    String[] projection() {
+        if (projectNames == null) {
+            return null;
+        }
+        Set<String> set = new LinkedHashSet<>();
+        set.add("_id");
+        set.addAll(Arrays.asList(projectNames));
+        Optional.ofNullable(sortFieldName).ifPresent(set::add);
+        return set.toArray(new String[0]);
+    }
+
+
+    @Override
+    public FindOptions gt(String fieldName, Object value) {
+        return lower(fieldName, value, false);
+    }
+
+
+    @Override
+    public FindOptions gte(String fieldName, Object value) {
+        return lower(fieldName, value, true);
+    }
+
+
+    @Override
+    public FindOptions lt(String fieldName, Object value) {
+        return upper(fieldName, value, false);
+    }
+
+
+    @Override
+    public FindOptions lte(String fieldName, Object value) {
+        return upper(fieldName, value, true);
+    }
+
+
+    @Override
+    public FindOptions between(String fieldName, Object fromValue, Object toValue) {
+        lower(fieldName, fromValue, true);
+        return upper(fieldName, toValue, true);
+    }
+
+
+    private FindOptions lower(String fieldName, Object value, boolean inclusive) {
+        checkRangeName(fieldName);
+        lowerValue = Optional.ofNullable(value).orElseThrow(NullPointerException::new);
+        lowerInclusive = inclusive;
+        return this;
+    }
+
+
+    private FindOptions upper(String fieldName, Object value, boolean inclusive) {
+        checkRangeName(fieldName);
+        upperValue = Optional.ofNullable(value).orElseThrow(NullPointerException::new);
+        upperInclusive = inclusive;
+        return this;
+    }
+
+
+    private void checkRangeName(String fieldName) {
+        if (fieldName == null || fieldName.isEmpty()) {
+            throw new QIOException(Constants.RANGE_FIELD_NAME_ILLEGAL);
+        }
+        if (rangeName != null && !rangeName.equals(fieldName)) {
+            throw new QIOException(Constants.RANGE_ON_MULTIPLE_FIELDS);
+        }
+        rangeName = fieldName;
+    }
+
+
     <T extends IOEntity> List<T> get(List<T> list) {
         Stream<T> stream = (list == null || list.isEmpty()) ? null : list.stream();
         if (stream == null) {
             return list;
         }
         if (sortValue != 0) {
-            Comparator<T> comparator = createComparator(list.get(0));
-            comparator = (sortValue == 1) ? comparator : comparator.reversed();
-            stream = stream.parallel().sorted(comparator);
-            stream = stream.sequential();
+            return sort(list.iterator());
         }
         if (skipSize > 0) {
             stream = stream.skip(skipSize);
@@ -92,24 +236,88 @@ final class QFindOptions implements FindOptions {
     }
 
 
-    private <K extends IOEntity, T extends IOEntity> Comparator<K> createComparator(T object) {
-        ReflectObject<T> reflectObject = new ReflectObject<>(object);
-        if (!reflectObject.contains(sortFieldName)) {
-            throw new QIOException(Constants.FIELD_DOES_NOT_EXIST);
+    <T extends IOEntity> List<T> get(Iterator<T> iterator) {
+        if (sortValue != 0) {
+            return sort(iterator);
+        }
+        List<T> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        return get(list);
+    }
+
+
+    //The sorting field of each document is read once, into its candidate, and only the keys are compared. With a limit,
+    //only the first skip + limit documents are needed, so they are kept in a bounded heap whose head is the worst
+    //candidate, instead of sorting everything that matched.
+    private <T extends IOEntity> List<T> sort(Iterator<T> iterator) {
+        long size = Math.max(skipSize, 0) + limitSize;
+        Field field = null;
+        Comparator<Candidate<T>> order = null;
+        PriorityQueue<Candidate<T>> heap = null;
+        List<Candidate<T>> candidates = new ArrayList<>();
+        long sequence = 0;
+        while (iterator.hasNext()) {
+            T t = iterator.next();
+            if (field == null) {
+                field = getSortField(t.getClass());
+                Comparator<Object> comparator = createComparator(field);
+                order = Candidate.order((sortValue == 1) ? comparator : comparator.reversed());
+                heap = (limitSize > 0) ? new PriorityQueue<>((int) Math.min(size, 1024) + 1, order.reversed()) : null;
+            }
+            Candidate<T> candidate = new Candidate<>(t, getKey(field, t), sequence++);
+            if (heap == null) {
+                candidates.add(candidate);
+            } else if (heap.size() < size) {
+                heap.add(candidate);
+            } else if (order.compare(candidate, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+        if (field == null) {
+            return new ArrayList<>();
         }
-        switch (reflectObject.getType(sortFieldName).getSimpleName().toLowerCase()) {
+        Optional.ofNullable(heap).ifPresent(candidates::addAll);
+        candidates.sort(order);
+        return candidates.stream()
+                .skip(Math.max(skipSize, 0))
+                .limit((limitSize > 0) ? limitSize : Long.MAX_VALUE)
+                .map(candidate -> candidate.t)
+                .collect(Collectors.toList());
+    }
+
+
+    private Field getSortField(Class<?> clazz) {
+        Field field = ReflectObject.getField(clazz, sortFieldName);
+        switch (field.getType().getSimpleName().toLowerCase()) {
             case "byte":
             case "short":
             case "int":
             case "integer":
-                return Comparator.comparingInt(t -> (int) new ReflectObject<>(t).getValue(sortFieldName));
             case "long":
-                return Comparator.comparingLong(t -> (long) new ReflectObject<>(t).getValue(sortFieldName));
+            case "float":
+            case "double": return field;
+            default: throw new QIOException(Constants.FIELD_DOES_NOT_SUPPORT_SORTING);
+        }
+    }
+
+
+    private static Comparator<Object> createComparator(Field field) {
+        switch (field.getType().getSimpleName().toLowerCase()) {
             case "float":
             case "double":
-                return Comparator.comparingDouble(t -> (double) new ReflectObject<>(t).getValue(sortFieldName));
+                return (key1, key2) -> Double.compare(((Number) key1).doubleValue(), ((Number) key2).doubleValue());
             default:
-                throw new QIOException(Constants.FIELD_DOES_NOT_SUPPORT_SORTING);
+                return (key1, key2) -> Long.compare(((Number) key1).longValue(), ((Number) key2).longValue());
+        }
+    }
+
+
+    private static Object getKey(Field field, Object t) {
+        try {
+            return field.get(t);
+        } catch (IllegalAccessException e) {
+            throw new QIOException(e);
         }
     }
 
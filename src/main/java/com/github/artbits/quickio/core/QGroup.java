@@ -0,0 +1,82 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.Group;
+import com.github.artbits.quickio.api.Stats;
+
+import java.util.Arrays;
+
+//The accumulators of one group, the field names are shared by all the groups of an aggregation.
+final class QGroup implements Group {
+
+    private final String[] fieldNames;
+    private final QStats[] stats;
+    private long count;
+
+
+    QGroup(String[] fieldNames, QStats[] stats) {
+        this.fieldNames = fieldNames;
+        this.stats = stats;
+    }
+
+
+    void add() {
+        count++;
+    }
+
+
+    QStats[] stats() {
+        return stats;
+    }
+
+
+    QGroup merge(QGroup group) {
+        Aggregator.combine(stats, group.stats);
+        count += group.count;
+        return this;
+    }
+
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+
+    @Override
+    public Stats stats(String fieldName) {
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].equals(fieldName)) {
+                return stats[i];
+            }
+        }
+        return null;
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("count: " + count);
+        for (int i = 0; i < fieldNames.length; i++) {
+            builder.append(", ").append(fieldNames[i]).append(": {").append(stats[i]).append("}");
+        }
+        return builder.toString();
+    }
+
+}
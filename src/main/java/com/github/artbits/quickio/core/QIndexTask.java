@@ -0,0 +1,177 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.IndexTask;
+import com.github.artbits.quickio.exception.QIOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+final class QIndexTask<T extends IOEntity> implements IndexTask, Runnable {
+
+    private final static int BATCH_SIZE = 10000;
+
+    private final EngineIO engine;
+    private final Indexer indexer;
+    private final Class<T> clazz;
+    private final byte[] prefix;
+    private final String fieldName;
+    private final boolean rebuild;
+    private byte[] start;
+    private byte[] end;
+    private final AtomicLong processed = new AtomicLong(0);
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile boolean cancelled;
+    private volatile RuntimeException exception;
+
+
+    //A null field name builds every index of the collection.
+    QIndexTask(EngineIO engine, Indexer indexer, Class<T> clazz, byte[] prefix, String fieldName, boolean rebuild) {
+        this.engine = engine;
+        this.indexer = indexer;
+        this.clazz = clazz;
+        this.prefix = prefix;
+        this.fieldName = fieldName;
+        this.rebuild = rebuild;
+        this.start = prefix;
+        this.end = Codec.nextPrefix(prefix);
+    }
+
+
+    //Only builds over the documents whose ids are in the range, both bounds inclusive.
+    QIndexTask<T> range(long fromId, long toId) {
+        this.start = Codec.encodeKey(prefix, fromId);
+        this.end = Codec.encodeKey(prefix, toId + 1);
+        return this;
+    }
+
+
+    //Stops the build after the batch it is writing. A build that has not started yet ends at once.
+    void cancel() {
+        cancelled = true;
+        if (started.compareAndSet(false, true)) {
+            exception = new QIOException(Constants.INDEX_BUILD_CANCELLED);
+            latch.countDown();
+        }
+    }
+
+
+    //Waits for the build to end, without throwing what it failed with.
+    void join() {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    //The ids are read from a view of the collection as it is when the build starts. A rebuild writes the entries
+    //over the ones in place, and sweeps the ones left over at the end, so the index is never found half empty.
+    @Override
+    public void run() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        EngineIO view = engine.view();
+        try {
+            List<Long> ids = new ArrayList<>();
+            view.iteration(start, end, (key, value) -> {
+                ids.add(Codec.decodeKey(key));
+                if (ids.size() >= BATCH_SIZE) {
+                    build(ids);
+                }
+            });
+            build(ids);
+            if (rebuild) {
+                checkCancelled();
+                indexer.sweepIndex(clazz, fieldName);
+            }
+        } catch (RuntimeException e) {
+            exception = e;
+        } finally {
+            view.close();
+            latch.countDown();
+        }
+    }
+
+
+    //Each batch reads the latest version of its documents while writers wait, and writers maintain the index
+    //themselves, so the writes made during the build are caught up.
+    private void build(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        checkCancelled();
+        indexer.exclusiveWriteBatch(batch -> {
+            List<T> list = ids.stream()
+                    .map(id -> Codec.decode(engine.get(Codec.encodeKey(prefix, id)), clazz))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            indexer.rebuildIndexes(batch, list, fieldName);
+        });
+        processed.addAndGet(ids.size());
+        ids.clear();
+    }
+
+
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new QIOException(Constants.INDEX_BUILD_CANCELLED);
+        }
+    }
+
+
+    @Override
+    public String fieldName() {
+        return fieldName;
+    }
+
+
+    @Override
+    public long processed() {
+        return processed.get();
+    }
+
+
+    @Override
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+
+    @Override
+    public void await() {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QIOException(e);
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+}
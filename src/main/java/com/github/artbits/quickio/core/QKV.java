@@ -21,7 +21,9 @@ import com.github.artbits.quickio.exception.QIOException;
 
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
@@ -30,6 +32,7 @@ import static com.github.artbits.quickio.core.Constants.KV_PATH;
 final class QKV implements JKV {
 
     private final EngineIO engine;
+    private final Committer committer;
 
 
     QKV(Config config) {
@@ -39,6 +42,7 @@ final class QKV implements JKV {
             config.path = Paths.get(config.path, KV_PATH).toAbsolutePath().toString();
         }
         engine = new EngineLevel().open(config);
+        committer = new Committer(engine, config);
     }
 
 
@@ -49,12 +53,14 @@ final class QKV implements JKV {
 
     @Override
     public void close() {
+        committer.close();
         engine.close();
     }
 
 
     @Override
     public void destroy() {
+        committer.close();
         engine.destroy();
     }
 
@@ -65,6 +71,14 @@ final class QKV implements JKV {
     }
 
 
+    @Override
+    public <K, V> CompletableFuture<Void> setAsync(K key, V value) {
+        byte[] keyBytes = Codec.encode(key);
+        byte[] valueBytes = Codec.encode(value);
+        return committer.submit(Collections.emptyList(), batch -> batch.put(keyBytes, valueBytes));
+    }
+
+
     @SuppressWarnings("unchecked")
     @Override
     public <K, V> V get(K key, V defaultValue) {
@@ -95,6 +109,13 @@ final class QKV implements JKV {
     }
 
 
+    @Override
+    public <K> CompletableFuture<Void> delAsync(K key) {
+        byte[] keyBytes = Codec.encode(key);
+        return committer.submit(Collections.emptyList(), batch -> batch.delete(keyBytes));
+    }
+
+
     @Override
     public <K> boolean exists(K key) {
         byte[] bytes = engine.get(Codec.encode(key));
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.Collection;
+import com.github.artbits.quickio.api.Snapshot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Collections that read the database as it was when the snapshot was taken. Writers go on meanwhile,
+//and the versions they replace are kept until the snapshot is closed. Nothing is written through it, so it has no writer.
+final class QSnapshot implements Snapshot {
+
+    private final EngineIO engine;
+    private final Catalog catalog;
+    private final Scanner scanner;
+    private final Map<String, Indexer> indexers = new ConcurrentHashMap<>();
+    private final Map<String, Counter<?>> counters = new ConcurrentHashMap<>();
+
+
+    QSnapshot(EngineIO engine, Catalog catalog, Config config) {
+        this.engine = engine.view();
+        this.catalog = catalog;
+        this.scanner = new Scanner(this.engine, config);
+    }
+
+
+    @Override
+    public void close() {
+        scanner.close();
+        engine.close();
+    }
+
+
+    private Indexer indexer(Class<?> clazz) {
+        return indexers.computeIfAbsent(clazz.getSimpleName(), name -> new Indexer(engine, catalog.indexPrefix(name)));
+    }
+
+
+    //The running values are read from the snapshot as they were stored, never counted again.
+    @SuppressWarnings("unchecked")
+    private <T extends IOEntity> Counter<T> counter(Class<T> clazz) {
+        return (Counter<T>) counters.computeIfAbsent(clazz.getSimpleName(),
+                name -> new Counter<>(engine, indexer(clazz), catalog.counterKey(clazz), clazz, catalog.prefix(clazz)));
+    }
+
+
+    //The cache of the database holds the current documents, so the collections of a snapshot go without one.
+    @Override
+    public <T extends IOEntity> Collection<T> collection(Class<T> clazz) {
+        EntityCache<T> cache = new EntityCache<>(clazz, catalog.prefix(clazz), 0, 0);
+        return new QCollection<>(clazz, engine, indexer(clazz), counter(clazz), cache, scanner, null, catalog);
+    }
+
+}
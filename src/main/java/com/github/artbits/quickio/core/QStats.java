@@ -0,0 +1,133 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.Stats;
+
+import java.math.BigDecimal;
+
+//Accumulates the values of one field. Integral values are summed in a long, which spills into the BigDecimal
+//part of the sum on overflow. Floating values are summed in a double, or in the BigDecimal part when exact.
+final class QStats implements Stats {
+
+    private final boolean integral;
+    private final boolean exact;
+    private long count;
+    private long longSum;
+    private double doubleSum;
+    private BigDecimal bigSum = BigDecimal.ZERO;
+    private long longMin = Long.MAX_VALUE;
+    private long longMax = Long.MIN_VALUE;
+    private double doubleMin = Double.POSITIVE_INFINITY;
+    private double doubleMax = Double.NEGATIVE_INFINITY;
+
+
+    QStats(boolean integral, boolean exact) {
+        this.integral = integral;
+        this.exact = exact;
+    }
+
+
+    void add(long value) {
+        addToSum(value);
+        longMin = Math.min(longMin, value);
+        longMax = Math.max(longMax, value);
+        count++;
+    }
+
+
+    void add(double value) {
+        if (exact) {
+            bigSum = bigSum.add(BigDecimal.valueOf(value));
+        } else {
+            doubleSum += value;
+        }
+        doubleMin = Math.min(doubleMin, value);
+        doubleMax = Math.max(doubleMax, value);
+        count++;
+    }
+
+
+    QStats merge(QStats stats) {
+        bigSum = bigSum.add(stats.bigSum);
+        addToSum(stats.longSum);
+        doubleSum += stats.doubleSum;
+        longMin = Math.min(longMin, stats.longMin);
+        longMax = Math.max(longMax, stats.longMax);
+        doubleMin = Math.min(doubleMin, stats.doubleMin);
+        doubleMax = Math.max(doubleMax, stats.doubleMax);
+        count += stats.count;
+        return this;
+    }
+
+
+    private void addToSum(long value) {
+        long sum = longSum + value;
+        if (((longSum ^ sum) & (value ^ sum)) < 0) {
+            bigSum = bigSum.add(BigDecimal.valueOf(longSum));
+            sum = value;
+        }
+        longSum = sum;
+    }
+
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+
+    @Override
+    public BigDecimal sum() {
+        if (integral) {
+            return bigSum.add(BigDecimal.valueOf(longSum));
+        }
+        return exact ? bigSum : BigDecimal.valueOf(doubleSum);
+    }
+
+
+    @Override
+    public Double average() {
+        return (count == 0) ? null : sum().doubleValue() / count;
+    }
+
+
+    @Override
+    public BigDecimal min() {
+        if (count == 0) {
+            return null;
+        }
+        return integral ? BigDecimal.valueOf(longMin) : BigDecimal.valueOf(doubleMin);
+    }
+
+
+    @Override
+    public BigDecimal max() {
+        if (count == 0) {
+            return null;
+        }
+        return integral ? BigDecimal.valueOf(longMax) : BigDecimal.valueOf(doubleMax);
+    }
+
+
+    @Override
+    public String toString() {
+        return "count: " + count() + ", sum: " + sum() + ", average: " + average() + ", min: " + min() + ", max: " + max();
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.api.JDB;
+import com.github.artbits.quickio.api.Transaction;
+import com.github.artbits.quickio.exception.QIOException;
+import org.iq80.leveldb.api.WriteBatch;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+//Writes are kept until the end of the transaction, and every document read is remembered as it was read.
+//The commit goes through the writer of the database, which holds the locks of the collections involved
+//while it checks the reads against the store and writes every collection in one batch. A transaction
+//whose reads were changed in the meantime is run again from the start after a random pause that grows with
+//each attempt, a limited number of times.
+final class QTransaction implements Transaction {
+
+    private final static int RETRIES = 10;
+    private final static long BACKOFF_NANOS = 100_000;
+
+    private static class ConflictException extends QIOException {
+        ConflictException() {
+            super(Constants.TRANSACTION_CONFLICT);
+        }
+    }
+
+
+    private final JDB db;
+    private final EngineIO engine;
+    private final Map<Class<?>, QCollection<?>> collections = new LinkedHashMap<>();
+    private final Map<Class<?>, Map<Long, IOEntity>> writes = new LinkedHashMap<>();
+    private final NavigableMap<byte[], byte[]> reads = new TreeMap<>(Codec::compare);
+
+
+    private QTransaction(JDB db, EngineIO engine) {
+        this.db = db;
+        this.engine = engine;
+    }
+
+
+    static void run(JDB db, EngineIO engine, Committer committer, Consumer<Transaction> consumer) {
+        for (int i = 1; ; i++) {
+            QTransaction transaction = new QTransaction(db, engine);
+            consumer.accept(transaction);
+            try {
+                transaction.commit(committer);
+                return;
+            } catch (ConflictException e) {
+                if (i >= RETRIES) {
+                    throw e;
+                }
+                LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(i * BACKOFF_NANOS));
+            }
+        }
+    }
+
+
+    //Reads the writes of the transaction first, and reads a document again as it was read the first time.
+    @Override
+    public <T extends IOEntity> T findOne(Class<T> clazz, long id) {
+        Map<Long, IOEntity> map = writes.get(clazz);
+        if (map != null && map.containsKey(id)) {
+            return clazz.cast(map.get(id));
+        }
+        byte[] key = collection(clazz).key(id);
+        if (!reads.containsKey(key)) {
+            reads.put(key, engine.get(key));
+        }
+        byte[] value = reads.get(key);
+        return (value != null) ? Codec.decode(value, clazz) : null;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends IOEntity> void save(T t) {
+        Class<T> clazz = (Class<T>) t.getClass();
+        collection(clazz);
+        if (t.objectId() == 0 || Plugin.getDigit(t.objectId()) < 18) {
+            t._id = Plugin.generateId();
+            t.createdAt = Plugin.toTimestamp(t.objectId());
+        }
+        writes.computeIfAbsent(clazz, c -> new LinkedHashMap<>()).put(t.objectId(), t);
+    }
+
+
+    @Override
+    public <T extends IOEntity> void delete(Class<T> clazz, long id) {
+        collection(clazz);
+        writes.computeIfAbsent(clazz, c -> new LinkedHashMap<>()).put(id, null);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private <T extends IOEntity> QCollection<T> collection(Class<T> clazz) {
+        return (QCollection<T>) collections.computeIfAbsent(clazz, c -> (QCollection<?>) db.collection(clazz));
+    }
+
+
+    //The collections that were only read are locked as well, so that nothing changes them between the check and the write.
+    private void commit(Committer committer) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        List<Committer.Party> parties = collections.values().stream().map(QCollection::party).collect(Collectors.toList());
+        Consumer<WriteBatch> consumer = batch -> {
+            reads.forEach((key, value) -> {
+                if (!Arrays.equals(engine.get(key), value)) {
+                    throw new ConflictException();
+                }
+            });
+            writes.forEach((clazz, map) -> collections.get(clazz).writer(map).accept(batch));
+        };
+        try {
+            committer.submit(parties, consumer).join();
+        } catch (CompletionException e) {
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+        }
+        writes.forEach((clazz, map) -> collections.get(clazz).invalidate(map.keySet()));
+    }
+
+}
@@ -94,6 +94,12 @@ final class ReflectObject<T extends IOEntity> {
     }
 
 
+    <A extends Annotation> A getAnnotation(String fieldName, Class<A> annotationClass) {
+        Field field = fieldMap.getOrDefault(fieldName, null);
+        return (field != null) ? field.getAnnotation(annotationClass) : null;
+    }
+
+
     Object getValue(String fieldName) {
         try {
             Field field = fieldMap.getOrDefault(fieldName, null);
@@ -150,4 +156,18 @@ final class ReflectObject<T extends IOEntity> {
         return t;
     }
 
+
+    //Looks the field up through the superclasses, unlike the fields of an object it also finds the id.
+    static Field getField(Class<?> clazz, String fieldName) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException ignored) {
+            }
+        }
+        throw new QIOException(Constants.FIELD_DOES_NOT_EXIST);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2022 Zhang Guanhu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.artbits.quickio.core;
+
+import com.github.artbits.quickio.exception.QIOException;
+import org.iq80.leveldb.api.DBIterator;
+import org.iq80.leveldb.api.Snapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+final class Scanner {
+
+    //More partitions than threads, so that ranges holding more documents than others even out.
+    private final static int PARTITIONS_PER_THREAD = 4;
+
+    private final EngineIO engine;
+    private final int parallelism;
+    private final Executor executor;
+    private final Set<QIndexTask<?>> tasks = ConcurrentHashMap.newKeySet();
+    private boolean closed;
+
+
+    Scanner(EngineIO engine, Config config) {
+        this.engine = engine;
+        this.parallelism = config.parallelism;
+        this.executor = (config.executor != null) ? config.executor : ForkJoinPool.commonPool();
+    }
+
+
+    boolean isParallel() {
+        return parallelism > 1;
+    }
+
+
+    //Index builds run on the same executor. They are cancelled and awaited when the database closes,
+    //so that none of them goes on writing to a closed engine.
+    synchronized void execute(QIndexTask<?> task) {
+        if (closed) {
+            throw new QIOException(Constants.WRITER_CLOSED);
+        }
+        tasks.add(task);
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    tasks.remove(task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            tasks.remove(task);
+            throw new QIOException(e);
+        }
+    }
+
+
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        tasks.forEach(QIndexTask::cancel);
+        tasks.forEach(QIndexTask::join);
+    }
+
+
+    //Folds the documents between start and end. In parallel, every partition has an accumulator and an iterator
+    //of its own over one shared snapshot, and the accumulators are combined in key order.
+    <A> A scan(byte[] start, byte[] end, Supplier<A> supplier, BiConsumer<A, byte[]> accumulator, BinaryOperator<A> combiner) {
+        if (!isParallel()) {
+            A a = supplier.get();
+            engine.iteration(start, end, (key, value) -> {
+                accumulator.accept(a, value);
+            });
+            return a;
+        }
+        Snapshot snapshot = engine.snapshot();
+        List<CompletableFuture<A>> futures = new ArrayList<>();
+        try {
+            for (byte[][] partition : partition(snapshot, start, end)) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    A a = supplier.get();
+                    scan(snapshot, partition[0], partition[1], value -> accumulator.accept(a, value));
+                    return a;
+                }, executor));
+            }
+            A result = supplier.get();
+            for (CompletableFuture<A> future : futures) {
+                result = combiner.apply(result, future.join());
+            }
+            return result;
+        } catch (CompletionException e) {
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : new QIOException(e.getCause());
+        } finally {
+            await(futures);
+            close(snapshot);
+        }
+    }
+
+
+    //Maps a list one slice per thread, for the encoding of bulk writes. The results keep the order of the list.
+    <E, R> List<R> map(List<E> list, Function<E, R> function) {
+        if (!isParallel() || list.size() < parallelism) {
+            List<R> results = new ArrayList<>(list.size());
+            list.forEach(e -> results.add(function.apply(e)));
+            return results;
+        }
+        int size = (list.size() + parallelism - 1) / parallelism;
+        List<CompletableFuture<List<R>>> futures = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            List<E> slice = list.subList(i, Math.min(i + size, list.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                List<R> results = new ArrayList<>(slice.size());
+                slice.forEach(e -> results.add(function.apply(e)));
+                return results;
+            }, executor));
+        }
+        await(futures);
+        try {
+            List<R> results = new ArrayList<>(list.size());
+            futures.forEach(future -> results.addAll(future.join()));
+            return results;
+        } catch (CompletionException e) {
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : new QIOException(e.getCause());
+        }
+    }
+
+
+    //Document keys end with an id, so the range between the first and the last id is cut into equal id ranges.
+    private List<byte[][]> partition(Snapshot snapshot, byte[] start, byte[] end) {
+        List<byte[][]> partitions = new ArrayList<>();
+        byte[] first;
+        try (DBIterator iterator = engine.iterator(snapshot)) {
+            iterator.seek(start);
+            first = iterator.hasNext() ? iterator.peekNext().getKey() : null;
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+        if (first == null || Codec.compare(first, end) >= 0) {
+            return partitions;
+        }
+        //Read outside the snapshot, the last key only evens out the partitions, which reach the end anyway.
+        byte[] last = engine.reverseIteration(start, end, (key, value) -> key);
+        last = (last != null && Codec.compare(last, first) > 0) ? last : first;
+        byte[] prefix = new byte[first.length - Long.BYTES];
+        System.arraycopy(first, 0, prefix, 0, prefix.length);
+        long firstId = Codec.decodeKey(first);
+        long lastId = Codec.decodeKey(last);
+        int count = parallelism * PARTITIONS_PER_THREAD;
+        long step = (lastId - firstId) / count + 1;
+        byte[] from = start;
+        for (int i = 1; i < count && firstId + step * i <= lastId; i++) {
+            byte[] to = Codec.encodeKey(prefix, firstId + step * i);
+            partitions.add(new byte[][]{from, to});
+            from = to;
+        }
+        partitions.add(new byte[][]{from, end});
+        return partitions;
+    }
+
+
+    private void scan(Snapshot snapshot, byte[] start, byte[] end, Consumer<byte[]> consumer) {
+        try (DBIterator iterator = engine.iterator(snapshot)) {
+            for (iterator.seek(start); iterator.hasNext(); iterator.next()) {
+                Map.Entry<byte[], byte[]> entry = iterator.peekNext();
+                if (Codec.compare(entry.getKey(), end) >= 0) {
+                    break;
+                }
+                consumer.accept(entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+
+    //Waits for every task to end, failed or not, before the first failure is thrown, so that none is left running
+    //against a released snapshot.
+    private static void await(List<? extends CompletableFuture<?>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException | CancellationException e) {
+            //Thrown again by the join of the failed task.
+        }
+    }
+
+
+    private static void close(Snapshot snapshot) {
+        try {
+            snapshot.close();
+        } catch (IOException e) {
+            throw new QIOException(e);
+        }
+    }
+
+}
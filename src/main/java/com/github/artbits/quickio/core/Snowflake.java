@@ -52,6 +52,9 @@ final class Snowflake {
     //Move the time cutoff 22 bits to the left (5+5+12)
     private final static long timestampLeftShift = sequenceBits + workerIdBits + datacenterIdBits;
 
+    //The latest timestamp that still fits the 41 timestamp bits
+    private final static long maxTimestamp = epoch + ~(-1L << (63 - timestampLeftShift));
+
     //The mask of the generated sequence, which is 4095 (0b1111111111111=0xfff=4095)
     private final static long sequenceMask = ~(-1L << sequenceBits);
 
@@ -137,6 +140,44 @@ final class Snowflake {
     }
 
 
+    //Reserves a block of ids under one lock, in the same ascending order as ids generated one at a time.
+    //The rest of the sequence of the current millisecond is taken as a range, and then the next milliseconds.
+    long[] nextIds(int count) {
+        try {
+            lock.lock();
+            long[] ids = new long[count];
+            int i = 0;
+            while (i < count) {
+                long timestamp = timeGen();
+                if (timestamp < lastTimestamp) {
+                    throw new RuntimeException(String.format("Clock moved backwards.  " +
+                            "Refusing to generate id for %d milliseconds", lastTimestamp - timestamp));
+                }
+                long from = 0L;
+                if (lastTimestamp == timestamp) {
+                    from = sequence + 1;
+                    if (from > sequenceMask) {
+                        timestamp = tilNextMillis(lastTimestamp);
+                        from = 0L;
+                    }
+                }
+                long to = Math.min(from + count - i, sequenceMask + 1);
+                long base = ((timestamp - epoch) << timestampLeftShift)
+                        | (datacenterId << datacenterIdShift)
+                        | (workerId << workerIdShift);
+                for (long s = from; s < to; s++) {
+                    ids[i++] = base | s;
+                }
+                sequence = to - 1;
+                lastTimestamp = timestamp;
+            }
+            return ids;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
     //through id activity timestamp
     long toTimestamp(long snowId) {
         String id = Long.toBinaryString(snowId);
@@ -145,4 +186,17 @@ final class Snowflake {
         return Long.parseUnsignedLong(s, 2) + epoch;
     }
 
+
+
+    //The smallest id that can be generated at the timestamp
+    long toMinId(long timestamp) {
+        return (Math.min(Math.max(timestamp, epoch), maxTimestamp) - epoch) << timestampLeftShift;
+    }
+
+
+    //The largest id that can be generated at the timestamp
+    long toMaxId(long timestamp) {
+        return toMinId(timestamp) | ~(-1L << timestampLeftShift);
+    }
+
 }
\ No newline at end of file
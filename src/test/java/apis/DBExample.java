@@ -1,16 +1,32 @@
 package apis;
 
+import com.github.artbits.quickio.annotations.Aggregate;
+import com.github.artbits.quickio.annotations.CompoundIndex;
 import com.github.artbits.quickio.annotations.Index;
+import com.github.artbits.quickio.annotations.Version;
+import com.github.artbits.quickio.api.BulkReport;
 import com.github.artbits.quickio.api.Collection;
+import com.github.artbits.quickio.api.Cursor;
+import com.github.artbits.quickio.api.Explain;
+import com.github.artbits.quickio.api.Group;
+import com.github.artbits.quickio.api.IndexTask;
 import com.github.artbits.quickio.api.JDB;
+import com.github.artbits.quickio.api.Snapshot;
+import com.github.artbits.quickio.api.Stats;
 import com.github.artbits.quickio.core.Config;
+import com.github.artbits.quickio.core.Filter;
 import com.github.artbits.quickio.core.IOEntity;
 import com.github.artbits.quickio.core.QuickIO;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 final class DBExample {
 
@@ -19,12 +35,18 @@ final class DBExample {
 
 
     //Custom Entity Class.
+    @CompoundIndex(fields = {"author", "price"}, unique = false)     //Compound index, queried by leading fields
     static class Book extends IOEntity {
         @Index
         public String isbn;         //Unique index
         public String name;
-        public String author;
-        public Double price;
+        @Index(unique = false)
+        public String author;       //Non-unique index
+        @Index(unique = false, ordered = true)
+        @Aggregate
+        public Double price;        //Ordered index, supports range queries. Sum, min and max are kept up to date
+        @Version
+        public Long version;        //Counts the writes of a book, for compare-and-set updates
 
         public static Book of(Consumer<Book> consumer) {
             Book book = new Book();
@@ -34,12 +56,33 @@ final class DBExample {
     }
 
 
+    static class Log extends IOEntity {
+        public Integer level;
+
+        public static Log of(int level) {
+            Log log = new Log();
+            log.level = level;
+            return log;
+        }
+    }
+
+
     @Test
     void config() {
         Config config = Config.of(c -> {
             c.name("example_db");
             c.path("/usr/qio");                 //Custom base path.
             c.cache(16L * 1024 * 1024);         //Set cache size.
+            c.parallelism(4);                   //Scan collections on 4 threads.
+            c.asyncBatchSize(500);              //Write at most 500 asynchronous requests in one batch.
+            c.asyncDelay(2);                    //Wait up to 2 ms for more requests to join a batch.
+            c.writeBufferSize(8 * 1024 * 1024); //Buffer more writes before they are flushed, for write-heavy stores.
+            c.blockSize(16 * 1024);             //Larger blocks for scans, smaller ones for point reads.
+            c.maxOpenFiles(500);
+            c.verifyChecksums(true);            //Check data against its checksums on reads.
+            c.durability(Config.Durability.GROUP);  //Sync each group of asynchronous writes to disk.
+            c.entityCacheSize(10000);           //Keep up to 10000 documents read by id per collection, decoded.
+            c.entityCacheBytes(64L * 1024 * 1024);
         });
 
         try (JDB db1 = QuickIO.db(config)) {
@@ -71,6 +114,15 @@ final class DBExample {
             b.price = 116.0;
         }));
         collection.save(books);
+
+        //Bulk load, in batches of 5000 with new ids. Index entries are built in one pass at the end.
+        BulkReport report = collection.bulkSave(books, options -> options.batchSize(5000).deferIndexes()
+                .progress(r -> System.out.println(r.count() + " saved, " + r.rate() + " per second")));
+
+        //Asynchronous writes from many threads are grouped and written together by a single writer.
+        Book book = Book.of(b -> b.name = "Thinking in C++");
+        CompletableFuture<Void> future = collection.saveAsync(book);
+        future.thenCompose(v -> collection.deleteAsync(book.objectId())).join();
     }
 
 
@@ -83,7 +135,8 @@ final class DBExample {
         Book book3 = collection.findLast();
         Book book4 = collection.findLast(b -> "Bruce Eckel".equals(b.author));
         Book book5 = collection.findOne(b -> "On Java 8".equals(b.name));
-        Book book6 = collection.findOne(book5.objectId());
+        Book book6 = collection.findOne(book5.objectId());      //Served from the cache when it is turned on.
+        QuickIO.println(collection.cacheStats());
 
         List<Book> books1 = collection.findAll();
         List<Book> books2 = collection.find(b -> "Bruce Eckel".equals(b.author));
@@ -95,6 +148,113 @@ final class DBExample {
         List<Book> books7 = collection.findWithID(id -> id > book1.objectId(), options -> options.sort("price", 1));
         List<Book> books8 = collection.findWithTime(createdAt -> createdAt < System.currentTimeMillis());
         List<Book> books9 = collection.findWithTime(createdAt -> createdAt < System.currentTimeMillis(), options -> options.sort("price", -1));
+
+        //Range queries seek straight to the first matching ID, both bounds are inclusive.
+        List<Book> books10 = collection.findWithID(book1.objectId(), book3.objectId());
+        List<Book> books11 = collection.findWithTime(System.currentTimeMillis() - 5 * 60 * 1000, System.currentTimeMillis());
+        List<Book> books12 = collection.findWithTime(0, System.currentTimeMillis(), options -> options.sort("price", -1).limit(10));
+        List<Book> books13 = collection.findWithTime(System.currentTimeMillis() - 5 * 60 * 1000, Long.MAX_VALUE);
+
+        //Only the projected fields are decoded, the predicate sees the same partial documents.
+        List<Book> books14 = collection.find(b -> b.price >= 100, options -> options.project("name", "price"));
+        List<String> names = collection.pluck("name");
+
+        //Declarative filters let the planner pick an id range or an index instead of a full scan.
+        List<Book> books15 = collection.findWithFilter(Filter.and(Filter.eq("author", "Bruce Eckel"), Filter.gte("price", 100)));
+        List<Book> books16 = collection.findWithFilter(Filter.or(Filter.eq("isbn", "9787115585011"), Filter.between("price", 100, 120)),
+                options -> options.sort("price", 1).limit(10));
+        Explain explain = collection.explain(Filter.in("author", "Bruce Eckel", "Stephen Prata"));
+        QuickIO.println(explain.plan() + ", examined: " + explain.examined() + ", returned: " + explain.returned());
+    }
+
+
+    @Test
+    void findLast() {
+        Collection<Log> collection = db.collection(Log.class);
+        List<Log> logs = new ArrayList<>();
+        for (int i = 0; i < 40000; i++) {
+            logs.add(Log.of(i % 100));
+        }
+        collection.save(logs);
+
+        //The end of the collection is sought, so finding the last documents takes less than one scan of them.
+        long scan = Long.MAX_VALUE, last = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long t1 = System.nanoTime();
+            collection.count(log -> log.level == 0);
+            long t2 = System.nanoTime();
+            collection.findLast();
+            collection.findLast(log -> log.level == 0);
+            long t3 = System.nanoTime();
+            scan = Math.min(scan, t2 - t1);
+            last = Math.min(last, t3 - t2);
+        }
+        Assertions.assertTrue(last < scan, "findLast scanned the collection");
+        collection.deleteAll();
+    }
+
+
+    @Test
+    void findWithBounds() {
+        Collection<Log> collection = db.collection(Log.class);
+        Log log = Log.of(1);
+        collection.save(log);
+
+        //A fractional bound on the id or the creation time is rounded inwards, an exclusive whole bound moves by one.
+        List<Log> logs1 = collection.findWithFilter(Filter.and(Filter.gt("createdAt", log.createdAt() - 0.5), Filter.lt("createdAt", log.createdAt() + 0.5)));
+        List<Log> logs2 = collection.findWithFilter(Filter.gt("_id", 0.5));
+        List<Log> logs3 = collection.findWithFilter(Filter.lt("createdAt", log.createdAt()));
+        Assertions.assertEquals(1, logs1.size());
+        Assertions.assertEquals(1, logs2.size());
+        Assertions.assertEquals(0, logs3.size());
+        collection.deleteAll();
+    }
+
+
+    @Test
+    void transaction() {
+        Collection<Book> collection = db.collection(Book.class);
+        Book book = Book.of(b -> { b.name = "C++ Primer"; b.price = 100.0; });
+        collection.save(book);
+
+        //The reads are checked again at commit, and all writes go out together. On a conflict the lambda runs again.
+        db.transaction(tx -> {
+            Book book1 = tx.findOne(Book.class, book.objectId());
+            book1.price = book1.price * 0.8;
+            tx.save(book1);
+            tx.save(Book.of(b -> { b.name = "C++ Primer Plus"; b.price = 80.0; }));
+        });
+    }
+
+
+    @Test
+    void snapshot() {
+        //Every query on a snapshot sees the same data while writers go on. Closing it lets go of the old versions.
+        try (Snapshot snapshot = db.snapshot()) {
+            Collection<Book> collection = snapshot.collection(Book.class);
+            long count = collection.count();
+            List<Book> page1 = collection.find(b -> true, options -> options.skip(0).limit(10));
+            List<Book> page2 = collection.find(b -> true, options -> options.skip(10).limit(10));
+            QuickIO.println("count = %d, page1 = %d, page2 = %d", count, page1.size(), page2.size());
+        }
+    }
+
+
+    @Test
+    void cursor() {
+        Collection<Book> collection = db.collection(Book.class);
+
+        //Documents are decoded one at a time, and the iteration stops as soon as the limit is reached.
+        try (Cursor<Book> cursor = collection.cursor(b -> b.price >= 100, options -> options.skip(10).limit(10))) {
+            while (cursor.hasNext()) {
+                cursor.next().printJson();
+            }
+        }
+
+        //The stream must be closed to release the underlying iterator.
+        try (Stream<Book> stream = collection.stream(b -> "Bruce Eckel".equals(b.author))) {
+            stream.map(b -> b.name).forEach(QuickIO::println);
+        }
     }
 
 
@@ -106,10 +266,29 @@ final class DBExample {
 
         Book book = collection.findWithIndex(options -> options.index("isbn", "9787115585011"));
 
+        List<Book> books1 = collection.findAllWithIndex(options -> options.index("author", "Bruce Eckel"));
+
+        //Range queries on a field with an ordered index walk the index instead of scanning, in the order of the index.
+        //Documents without a value, or stored before the index was built, have no entry, so a sort without a range scans.
+        List<Book> books2 = collection.findAllWithIndex(options -> options.gte("price", 100).lt("price", 120));
+        List<Book> books3 = collection.findAllWithIndex(options -> options.between("price", 100, 200).sort("price", -1).limit(10));
+        List<Book> books4 = collection.find(b -> "Bruce Eckel".equals(b.author), options -> options.gte("price", 0).sort("price", 1).limit(10));
+
+        //A compound index is queried by all of its fields or by its leading fields.
+        List<Book> books5 = collection.findAllWithIndex(options -> options.index(new String[]{"author", "price"}, new Object[]{"Bruce Eckel", 159.0}));
+
         collection.updateWithIndex(Book.of(b -> b.price = 159.0), options -> options.index("isbn", "9787115585011"));
 
         collection.deleteWithIndex(options -> options.index("isbn", "9787115585011"));
 
+        //After adding the annotation to a field of stored documents, build its index in the background.
+        IndexTask task = collection.createIndex("author");
+        long processed = task.processed();
+        task.await();
+
+        //Rebuild an index from the documents, for example after a unique index was relaxed.
+        collection.rebuildIndex("price").await();
+
         //Before removing the index, delete the annotation of the entity class, and then call the method.
         collection.dropIndex("isbn");
     }
@@ -129,6 +308,16 @@ final class DBExample {
         collection.update(Book.of(b -> b.price = 129.8), b -> "9787115585011".equals(b.isbn));
         Book book2 = collection.findFirst();
         book2.printJson();
+
+        //Matching documents are written 1000 at a time, the number written so far is reported after each batch.
+        long count = collection.update(Book.of(b -> b.name = "Java"), b -> b.price > 100,
+                options -> options.batchSize(1000).progress(n -> System.out.println(n + " updated")));
+
+        //Written only if no one else saved the book since it was read, otherwise false is returned.
+        Book book3 = collection.findFirst();
+        book3.price *= 0.9;
+        boolean saved = collection.saveIfVersion(book3, book3.version);
+        boolean updated = collection.update(book3.objectId(), book3.version, Book.of(b -> b.name = "Java 8"));
     }
 
 
@@ -146,6 +335,16 @@ final class DBExample {
         double d6 = collection.max("price", b -> "Bruce Eckel".equals(b.author)).doubleValue();
         double d7 = collection.min("price").doubleValue();
         double d8 = collection.min("price", b -> "Bruce Eckel".equals(b.author)).doubleValue();
+
+        //Count, sum, average, max and min of several fields in one scan.
+        Stats stats = collection.stats("price");
+        Map<String, Stats> statsMap = collection.stats(b -> "Bruce Eckel".equals(b.author), "price", "_id");
+        double d9 = statsMap.get("price").average();
+
+        //Per author count and price aggregates, only the accumulators of each group are kept in memory.
+        Map<String, Group> groups = collection.groupBy("author", "price");
+        double d10 = groups.get("Bruce Eckel").stats("price").sum().doubleValue();
+        Map<Boolean, Group> groups2 = collection.groupBy(b -> b.price > 50, b -> b.author != null, "price");
     }
 
 
@@ -160,7 +359,8 @@ final class DBExample {
         collection.delete(book1.objectId(), book2.objectId());
         collection.delete(Arrays.asList(book1.objectId(), book2.objectId()));
         collection.delete(b -> b.createdAt() < System.currentTimeMillis());
-        collection.deleteAll();
+        long count = collection.delete(b -> b.price > 100, options -> options.batchSize(1000));
+        collection.deleteAll();     //Deletes by key range, without reading the documents
     }
 
 }
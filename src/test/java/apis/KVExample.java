@@ -56,6 +56,10 @@ final class KVExample {
         QuickIO.println("name = " + kv.get("name", String.class));
         kv.rename("name", "username");              //The old key is name, and the new key is username.
         QuickIO.println("name = %s, username = %s", kv.get("name", String.class), kv.get("username", String.class));
+
+
+        //Asynchronous writes, grouped with those of other threads.
+        kv.setAsync("e", 2.718).thenCompose(v -> kv.delAsync("e")).join();
     }
 
 